@@ -0,0 +1,95 @@
+import java.util.SplittableRandom;
+
+/**
+ * AliasTable class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * Picks one of n choices at random, each with a probability proportional to its integer weight, in
+ * constant time however many choices there are (the alias method of Walker, as arranged by Vose).
+ *
+ * Every choice owns one column of the table, all of the same height, the total weight. A column holds
+ * its own choice up to its threshold and a single other choice, its alias, above it. Picking draws a
+ * column and a height: two random numbers and one comparison. Weights are kept as exact integers, so
+ * the probabilities are exactly proportional to the weights. The table is built in time proportional
+ * to n and is never changed afterwards.
+ *
+ */
+
+public class AliasTable
+{
+	private long total;         // sum of the weights; the height of every column
+	private long[] thresholds;  // by column: heights below this pick the column's own choice
+	private int[] aliases;      // by column: the choice picked above the threshold
+
+	/**
+	 * Precondition: 0 <= start && start + count <= weights.length && every weight >= 0 && some weight > 0
+	 * Postcondition: Table choosing among weights[start] to weights[start + count - 1] constructed; choice i
+	 *                has weight weights[start + i]
+	 */
+	public AliasTable(int[] weights, int start, int count)
+	{
+		for (int i = 0; i < count; i++) {
+			if (weights[start + i] < 0) {
+				throw new IllegalArgumentException("Negative weight " + weights[start + i]);
+			}
+			total += weights[start + i];
+		}
+		if (total == 0) {
+			throw new IllegalArgumentException("No choice has any weight");
+		}
+		thresholds = new long[count];
+		aliases = new int[count];
+
+		// Scale every weight by count so that a column holds exactly total; columns holding less are
+		// topped up by columns holding more. The two work lists share one array, growing from each end.
+		int[] work = new int[count];
+		int small = 0;
+		int large = count;
+		for (int i = 0; i < count; i++) {
+			thresholds[i] = (long) weights[start + i] * count;
+			aliases[i] = i;
+			if (thresholds[i] < total) {
+				work[small++] = i;
+			}
+			else {
+				work[--large] = i;
+			}
+		}
+		while (small > 0 && large < count) {
+			int less = work[--small];
+			int more = work[large++];
+			aliases[less] = more;
+			thresholds[more] -= total - thresholds[less];
+			if (thresholds[more] < total) {
+				work[small++] = more;
+			}
+			else {
+				work[--large] = more;
+			}
+		}
+		// Whatever is left is full, up to rounding
+		while (small > 0) {
+			thresholds[work[--small]] = total;
+		}
+		while (large < count) {
+			thresholds[work[large++]] = total;
+		}
+	}
+
+	/**
+	 * @return The number of choices.
+	 */
+	public int size()
+	{
+		return aliases.length;
+	}
+
+	/**
+	 * Precondition: random != null
+	 * Postcondition: Returns a choice from 0 to size() - 1, each with probability proportional to its weight
+	 */
+	public int sample(SplittableRandom random)
+	{
+		int column = random.nextInt(aliases.length);
+		return random.nextLong(total) < thresholds[column] ? column : aliases[column];
+	}
+}
@@ -0,0 +1,176 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BatchRunner class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * Replays files of recorded commands without a terminal. Every script is played as a separate Game
+ * with no prompts, one command per line, with any answers to the math challenges on the lines where
+ * they are asked for. A script may end with quit or simply run out of lines.
+ * Scripts are played in parallel on a fixed pool of threads, all sharing one World. The messages of
+ * each game are either discarded or written to a transcript named after the script, so no two scripts
+ * may then have the same file name, even in different directories.
+ * When a seed is set, every game draws its teleports and challenges from a generator made from that
+ * seed, so replaying a script recorded with the same seed gives exactly the same transcript.
+ * When the items are shared, all the games play in one shared world (see SharedItems) and compete for
+ * its items, so the transcripts depend on how the games happen to interleave. Each game's transcript
+ * also tells what the other games did in the same room (see RoomPresence), before its next command.
+ *
+ */
+
+public class BatchRunner
+{
+	private World world;
+	private int threads;
+	private Path transcriptDirectory;
+	private boolean seeded;
+	private long seed;
+	private SharedItems sharedItems;    // null if every game has the world to itself
+	private RoomPresence presence;      // null if every game has the world to itself
+	private AtomicInteger finished;     // games that ended by quitting, winning or losing
+	private AtomicInteger unfinished;   // games whose script ran out of lines first
+	private AtomicInteger failed;       // scripts that could not be read or raised an error
+
+	/**
+	 * Precondition: world != null && threads > 0
+	 * Postcondition: Runner constructed; transcripts are written to transcriptDirectory, or discarded if it is null
+	 */
+	public BatchRunner(World world, int threads, Path transcriptDirectory)
+	{
+		this.world = world;
+		this.threads = threads;
+		this.transcriptDirectory = transcriptDirectory;
+		finished = new AtomicInteger();
+		unfinished = new AtomicInteger();
+		failed = new AtomicInteger();
+	}
+
+	/**
+	 * Replay all the given scripts and wait until every one has been played.
+	 * Precondition: scripts != null
+	 * Postcondition: Every script has been played and counted as finished, unfinished or failed; throws
+	 *                IllegalArgumentException before any is played if two would write the same transcript
+	 */
+	public void run(List<Path> scripts) throws InterruptedException
+	{
+		if (transcriptDirectory != null) {
+			HashMap<String, Path> named = new HashMap<String, Path>();
+			for (Path script : scripts) {
+				Path other = named.putIfAbsent(transcriptName(script), script);
+				if (other != null) {
+					throw new IllegalArgumentException(other + " and " + script + " would both write the transcript " + transcriptName(script));
+				}
+			}
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			ArrayList<Future<?>> games = new ArrayList<Future<?>>(scripts.size());
+			for (Path script : scripts) {
+				games.add(pool.submit(() -> replay(script)));
+			}
+			for (Future<?> game : games) {
+				try {
+					game.get();
+				}
+				catch (ExecutionException exception) {
+					// replay reports its own errors
+				}
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Every game played after this call uses a random generator made from seed
+	 */
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+		seeded = true;
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Every game played after this call shares the items and rooms of the world with the others
+	 */
+	public void shareItems()
+	{
+		sharedItems = new SharedItems(world);
+		presence = new RoomPresence(world);
+	}
+
+	public int getFinishedCount()
+	{
+		return finished.get();
+	}
+
+	public int getUnfinishedCount()
+	{
+		return unfinished.get();
+	}
+
+	public int getFailedCount()
+	{
+		return failed.get();
+	}
+
+	/**
+	 * Helper method that plays one script, counts how it ended and writes its transcript.
+	 */
+	private void replay(Path script)
+	{
+		MemorySink transcript = transcriptDirectory == null ? null : new MemorySink();
+		Output out = new Output(transcript == null ? OutputSink.DISCARD : transcript);
+		try {
+			Game game = new Game(world, new ByteArrayInputStream(Files.readAllBytes(script)), out);
+			game.setPrompt("");
+			if (seeded) {
+				game.setRandom(new SplittableRandom(seed));
+			}
+			if (sharedItems != null) {
+				game.shareItems(sharedItems);
+				game.shareRooms(presence, null);
+			}
+			try {
+				game.play();
+				finished.incrementAndGet();
+			}
+			catch (NoSuchElementException exception) {
+				game.leave();
+				out.flush();
+				unfinished.incrementAndGet();
+			}
+			if (transcript != null) {
+				Files.write(transcriptDirectory.resolve(transcriptName(script)), transcript.getText().getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		catch (IOException | RuntimeException exception) {
+			failed.incrementAndGet();
+			System.err.println(script + ": " + exception);
+		}
+	}
+
+	/**
+	 * Helper method that returns the file name of the transcript of a script.
+	 */
+	private static String transcriptName(Path script)
+	{
+		return script.getFileName() + ".out";
+	}
+}
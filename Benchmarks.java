@@ -0,0 +1,220 @@
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * Benchmarks class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * The work measured by the JMH benchmarks (see jmh/bench/EngineBenchmark.java): the hot paths of the game
+ * (parsing, dispatch, movement, search, inventory queries, teleporting and whole scripted games), set up on
+ * the standard world or on a large generated world.
+ *
+ * JMH only accepts benchmarks in a named package, and a class in a named package cannot name the classes
+ * of the game, so the benchmarks call these methods through method handles. Each method does one
+ * operation and returns a value computed from its work, which the benchmark hands back to JMH so that the
+ * work cannot be optimised away.
+ *
+ */
+
+public class Benchmarks
+{
+	public static final int GENERATED_ROOMS = 100000;
+	public static final long SEED = 42;
+	private static final int WALK_STEPS = 500;
+
+	private World world;
+	private CommandWords commands;
+	private Output discard;
+	private Game game;
+	private Command search;
+	private Command help;
+	private SplittableRandom random;
+	private String[] words;
+	private Room room;              // where the walks of getExit have got to
+	private Inventory inventory;
+	private Inventory fullInventory;
+	private Room teleport;
+	private byte[] lines;           // the scripted walk, parsed over and over
+	private int lineCount;
+	private Parser parser;
+	private int parsed;             // lines parser has read so far
+	private byte[] playthrough;     // the scripted walk as a whole game
+
+	/**
+	 * Precondition: worldName is "standard" or "generated"
+	 * Postcondition: Everything the benchmarks use is set up on the named world
+	 */
+	public Benchmarks(String worldName)
+	{
+		if (worldName.equals("standard")) {
+			world = World.getStandardWorld();
+		}
+		else if (worldName.equals("generated")) {
+			world = new World(new WorldGenerator(SEED).generate(GENERATED_ROOMS));
+		}
+		else {
+			throw new IllegalArgumentException("No world called " + worldName);
+		}
+		commands = Game.createCommandWords();
+		discard = new Output(OutputSink.DISCARD);
+		game = new Game(world, commands, new ByteArrayInputStream(new byte[0]), discard);
+		search = new Command(CommandWords.SEARCH, "search", null);
+		help = new Command(CommandWords.HELP, "help", null);
+		random = new SplittableRandom(SEED);
+		words = new String[] { "north", "east", "south", "west" };
+		room = world.getStartRoom();
+		inventory = new Inventory(world);
+		inventory.add(world.getItem("hat"));
+		fullInventory = new Inventory(world);
+		for (int item = 0; item < world.getItemCount(); item += 2) {
+			fullInventory.add(world.getItem(item));
+		}
+		teleport = world.getTeleport();
+
+		// A walk through the world that never enters the challenge room, whose questions cannot be scripted
+		String walk = scriptedWalk(world, WALK_STEPS);
+		lines = walk.getBytes(StandardCharsets.UTF_8);
+		lineCount = (int) walk.chars().filter(c -> c == '\n').count();
+		playthrough = (walk + "quit\n").getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Read and parse the next line of the scripted walk, starting it over when it runs out.
+	 */
+	public long parseCommand()
+	{
+		if (parser == null || parsed == lineCount) {
+			parser = new Parser(commands, new ByteArrayInputStream(lines), discard);
+			parsed = 0;
+		}
+		parsed++;
+		return parser.getCommand().getCommandId();
+	}
+
+	/**
+	 * Dispatch "search" through the handler table and carry it out in the start room.
+	 */
+	public long dispatchSearch()
+	{
+		boolean finished = commands.getHandler(search.getCommandId()).execute(game, search);
+		discard.flush();
+		return finished ? 1 : 0;
+	}
+
+	/**
+	 * Dispatch "help" through the handler table.
+	 */
+	public long dispatchHelp()
+	{
+		boolean finished = commands.getHandler(help.getCommandId()).execute(game, help);
+		discard.flush();
+		return finished ? 1 : 0;
+	}
+
+	/**
+	 * Take one step of a random walk, looking the exit up by its word.
+	 */
+	public long getExitByWord()
+	{
+		Room next = room.getExit(words[random.nextInt(words.length)]);
+		if (next != null) {
+			room = next;
+		}
+		return room.getId();
+	}
+
+	/**
+	 * Take one step of a random walk, looking the exit up by its Direction.
+	 */
+	public long getExitByDirection()
+	{
+		Room next = room.getExit(Direction.get(random.nextInt(4)));
+		if (next != null) {
+			room = next;
+		}
+		return room.getId();
+	}
+
+	/**
+	 * Search a random room and list the items found there.
+	 */
+	public long searchRoom()
+	{
+		Room searched = world.getRoom(random.nextInt(world.getRoomCount()));
+		if (!searched.hasItemsNotIn(inventory)) {
+			return 0;
+		}
+		searched.printItemDescriptions(inventory, discard);
+		discard.flush();
+		return 1;
+	}
+
+	/**
+	 * Ask whether the inventory holds an item of one of the characteristics, in turn.
+	 */
+	public long hasCharacteristic()
+	{
+		return inventory.hasItemWithCharacteristic(1 << random.nextInt(Item.FLAG_COUNT)) ? 1 : 0;
+	}
+
+	/**
+	 * Look a held item up by its title and characteristic.
+	 */
+	public long getCharacteristic()
+	{
+		return inventory.getItemWithCharacteristic(random.nextBoolean() ? "hat" : "potassium", Item.WEARABLE) != null ? 1 : 0;
+	}
+
+	/**
+	 * List every held item of some types, from an inventory holding half the items of the world.
+	 */
+	public long itemsWithCharacteristic()
+	{
+		return fullInventory.getItemsWithCharacteristic(Item.THROWABLE | Item.MEDICINE).length;
+	}
+
+	/**
+	 * Pick where the teleport sends the player.
+	 */
+	public long teleportDestination()
+	{
+		return world.getTeleportDestination(teleport, random).getId();
+	}
+
+	/**
+	 * Play a whole game: the scripted walk, then quit.
+	 */
+	public long playGame()
+	{
+		Game played = new Game(world, commands, new ByteArrayInputStream(playthrough), discard);
+		played.play();
+		return played.getCurrentRoom().getId();
+	}
+
+	/**
+	 * Helper method that writes the commands of a random walk of the given length from the start room.
+	 * The walk tries exits that do not exist as well, searches every room it enters, and never enters the
+	 * challenge room, the locked room or the teleport, so it runs the same way in every game.
+	 */
+	private static String scriptedWalk(World world, int steps)
+	{
+		SplittableRandom random = new SplittableRandom(SEED);
+		StringBuilder script = new StringBuilder();
+		Room room = world.getStartRoom();
+		int taken = 0;
+		while (taken < steps) {
+			Direction direction = Direction.get(random.nextInt(4));
+			Room next = room.getExit(direction);
+			if (next == null) {
+				script.append("go ").append(direction).append('\n');
+			}
+			else if (next != world.getChallengeRoom() && next != world.getLockedRoom() && !world.isTeleport(next)) {
+				script.append("go ").append(direction).append("\nsearch\n");
+				room = next;
+			}
+			taken++;
+		}
+		script.append("help\n");
+		return script.toString();
+	}
+}
@@ -0,0 +1,422 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ClusterNode class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * One of several programs that together play a world too big for one (see WorldPartition). Every node
+ * loads the whole map, which is cheap (see WorldImage), but plays a game only while its player stands in
+ * one of the node's own rooms, so the games and the rooms they bring to life are spread over the nodes.
+ *
+ * A player stays connected to the node they first connected to, its gateway (see GameServer). When a
+ * command takes the player into a room of another node, the game is handed off: its state (see
+ * Game.saveState) is sent to that node, and from then on the gateway passes each line the player types
+ * to that node and the response back, until a later command takes the player elsewhere.
+ *
+ * Nodes talk over one loopback connection per pair, opened by the gateway when first needed. A
+ * gateway sends a player's next line only once the response to the previous one has arrived, and
+ * always on the connection to the node that has the game, after the game itself; lines are numbered,
+ * and the number of the next line travels with the game. Every line is therefore carried out exactly
+ * once, by the node that has the game at the time; a node that is sent a line out of turn drops the
+ * connection rather than lose or repeat a command, which ends the sessions of that gateway there.
+ *
+ * Messages on a connection, from the gateway: a type byte, the session id, and then for HANDOFF the
+ * number of the next line and the game's state, for LINE the line's number and text, and for CLOSE
+ * nothing more. The node answers each LINE with the session id, the line's number, whether the game
+ * finished, the node that now has the game, the response, and the game's state if it has moved on.
+ *
+ */
+
+public class ClusterNode implements Closeable
+{
+	public static final int LINK_PORT_OFFSET = 100;     // node n takes links on base port + LINK_PORT_OFFSET + n
+	static final byte HANDOFF = 1;
+	static final byte LINE = 2;
+	static final byte CLOSE = 3;
+
+	private World world;
+	private WorldPartition partition;
+	private int index;
+	private int basePort;
+	private ServerSocket linkSocket;
+	private Link[] links;               // by node: the connection to it; null until first needed, and after it failed
+	private Listener listener;
+	private AtomicInteger sessions;     // session ids given out so far
+
+	/**
+	 * What a gateway is told by the other nodes. Called on the thread reading the connection to the node.
+	 */
+	public interface Listener
+	{
+		/**
+		 * A node has carried out a line.
+		 */
+		void replied(Reply reply);
+
+		/**
+		 * The connection to the node was lost; the games it had are gone.
+		 */
+		void linkFailed(int node);
+	}
+
+	/**
+	 * The outcome of a line carried out by another node.
+	 */
+	public static class Reply
+	{
+		final long session;
+		final int line;         // the number of the line carried out
+		final boolean finished; // whether the line ended the game
+		final int owner;        // the node that now has the game
+		final String text;      // the response to send to the player
+		final byte[] state;     // the game's state if it must be handed off to owner; null otherwise
+
+		Reply(long session, int line, boolean finished, int owner, String text, byte[] state)
+		{
+			this.session = session;
+			this.line = line;
+			this.finished = finished;
+			this.owner = owner;
+			this.text = text;
+			this.state = state;
+		}
+	}
+
+	/**
+	 * Precondition: partition divides the rooms of world && 0 <= index < partition.getNodeCount() && 0 < basePort
+	 * Postcondition: Node index of the partition constructed, taking games handed off by the other nodes on its
+	 *                link port; the nodes take links on the ports from basePort + LINK_PORT_OFFSET up
+	 */
+	public ClusterNode(World world, WorldPartition partition, int index, int basePort) throws IOException
+	{
+		this.world = world;
+		this.partition = partition;
+		this.index = index;
+		this.basePort = basePort;
+		links = new Link[partition.getNodeCount()];
+		sessions = new AtomicInteger();
+		linkSocket = new ServerSocket();
+		linkSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), getLinkPort(index)));
+		Thread acceptor = new Thread(this::acceptLinks, "node-" + index + "-links");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * @return The number of this node in its partition.
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * @return How the rooms are divided among the nodes.
+	 */
+	public WorldPartition getPartition()
+	{
+		return partition;
+	}
+
+	/**
+	 * Precondition: 0 <= node < number of nodes
+	 * Postcondition: Returns the port on which the node takes links from the other nodes
+	 */
+	public int getLinkPort(int node)
+	{
+		return basePort + LINK_PORT_OFFSET + node;
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Returns whether the player standing in the room must be played by another node
+	 */
+	public boolean isRemote(Room room)
+	{
+		return partition.getNode(room.getId()) != index;
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Returns a session id that no other session of any node of the partition has
+	 */
+	public long newSessionId()
+	{
+		return (long) index << 32 | sessions.incrementAndGet();
+	}
+
+	/**
+	 * Precondition: listener != null
+	 * Postcondition: Everything the other nodes say to this node as a gateway goes to listener
+	 */
+	public void setListener(Listener listener)
+	{
+		this.listener = listener;
+	}
+
+	/**
+	 * Hand a game off to the node owning the room its player is in. The caller must drop its own copy.
+	 * Precondition: node != getIndex(); state was returned by saveState of a game of this world
+	 * Postcondition: The node has the game; the line numbered line is the next one for it
+	 */
+	public void sendHandoff(int node, long session, int line, byte[] state) throws IOException
+	{
+		Link link = link(node);
+		synchronized (link) {
+			link.out.writeByte(HANDOFF);
+			link.out.writeLong(session);
+			link.out.writeInt(line);
+			link.out.writeInt(state.length);
+			link.out.write(state);
+			link.out.flush();
+		}
+	}
+
+	/**
+	 * Precondition: the game of session was handed off to node, and the previous line has been replied to
+	 * Postcondition: The node carries out text as the line numbered line; its Reply goes to the listener
+	 */
+	public void sendLine(int node, long session, int line, String text) throws IOException
+	{
+		Link link = link(node);
+		synchronized (link) {
+			link.out.writeByte(LINE);
+			link.out.writeLong(session);
+			link.out.writeInt(line);
+			link.out.writeUTF(text);
+			link.out.flush();
+		}
+	}
+
+	/**
+	 * Precondition: the game of session was handed off to node
+	 * Postcondition: The node drops the game; the player has left
+	 */
+	public void sendClose(int node, long session) throws IOException
+	{
+		Link link = link(node);
+		synchronized (link) {
+			link.out.writeByte(CLOSE);
+			link.out.writeLong(session);
+			link.out.flush();
+		}
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: No more games are taken from other nodes, and the connections to them are closed
+	 */
+	public void close() throws IOException
+	{
+		linkSocket.close();
+		for (int node = 0; node < links.length; node++) {
+			if (links[node] != null) {
+				links[node].socket.close();
+				links[node] = null;
+			}
+		}
+	}
+
+	/**
+	 * Helper method that returns the connection to the node, opening it if needed.
+	 */
+	private synchronized Link link(int node) throws IOException
+	{
+		if (links[node] == null) {
+			links[node] = new Link(node);
+		}
+		return links[node];
+	}
+
+	/**
+	 * Helper method that forgets a connection that has failed, so that the next message opens a new one.
+	 */
+	private synchronized void dropLink(Link link)
+	{
+		if (links[link.node] == link) {
+			links[link.node] = null;
+		}
+	}
+
+	/**
+	 * Helper method, run by the acceptor thread, that serves every gateway connecting to this node on a thread of its own.
+	 */
+	private void acceptLinks()
+	{
+		while (!linkSocket.isClosed()) {
+			try {
+				Socket socket = linkSocket.accept();
+				socket.setTcpNoDelay(true);
+				Thread thread = new Thread(() -> serveGateway(socket), "node-" + index + "-gateway");
+				thread.setDaemon(true);
+				thread.start();
+			}
+			catch (IOException exception) {
+				// closed, or a connection that failed at once; keep accepting until closed
+			}
+		}
+	}
+
+	/**
+	 * Helper method that plays the games a gateway hands off to this node, carrying out their lines in order,
+	 * until the gateway disconnects. The games are known to this thread alone.
+	 */
+	private void serveGateway(Socket socket)
+	{
+		HashMap<Long, Guest> guests = new HashMap<Long, Guest>();
+		try (socket) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			while (true) {
+				byte type = in.readByte();
+				long session = in.readLong();
+				if (type == HANDOFF) {
+					int line = in.readInt();
+					byte[] state = new byte[in.readInt()];
+					in.readFully(state);
+					guests.put(session, new Guest(line, state));
+				}
+				else if (type == LINE) {
+					int line = in.readInt();
+					String text = in.readUTF();
+					Guest guest = guests.get(session);
+					if (guest == null || guest.line != line) {
+						throw new IOException("Line " + line + " of session " + session + " out of turn");
+					}
+					guest.line++;
+					boolean finished = guest.game.handleLine(text);
+					int owner = finished ? index : partition.getNode(guest.game.getCurrentRoom().getId());
+					byte[] state = null;
+					if (finished) {
+						guests.remove(session);
+					}
+					else if (owner != index) {
+						state = guest.game.saveState();
+						guests.remove(session);
+					}
+					byte[] response = guest.takeResponse();
+					out.writeLong(session);
+					out.writeInt(line);
+					out.writeBoolean(finished);
+					out.writeInt(owner);
+					out.writeInt(response.length);
+					out.write(response);
+					out.writeInt(state == null ? -1 : state.length);
+					if (state != null) {
+						out.write(state);
+					}
+					out.flush();
+				}
+				else if (type == CLOSE) {
+					guests.remove(session);
+				}
+				else {
+					throw new IOException("Unknown message " + type);
+				}
+			}
+		}
+		catch (EOFException exception) {
+			// the gateway has gone; so have its players
+		}
+		catch (IOException | RuntimeException exception) {
+			System.err.println("Node " + index + " dropped a gateway: " + exception);
+		}
+	}
+
+	/**
+	 * A game handed off to this node, whose response is kept to be sent back to the gateway.
+	 */
+	private class Guest implements OutputSink
+	{
+		private Game game;
+		private int line;                   // the number of the next line
+		private StringBuilder response;
+
+		Guest(int line, byte[] state) throws IOException
+		{
+			this.line = line;
+			response = new StringBuilder();
+			game = new Game(world, InputStream.nullInputStream(), new Output(this));
+			game.restoreState(state);
+		}
+
+		public void write(char[] text, int length)
+		{
+			response.append(text, 0, length);
+		}
+
+		byte[] takeResponse()
+		{
+			byte[] bytes = response.toString().getBytes(StandardCharsets.UTF_8);
+			response.setLength(0);
+			return bytes;
+		}
+	}
+
+	/**
+	 * The connection from this node, as a gateway, to another node, with a thread reading its replies.
+	 */
+	private class Link
+	{
+		private int node;
+		private Socket socket;
+		private DataOutputStream out;   // written by one thread at a time, holding the link's lock
+
+		Link(int node) throws IOException
+		{
+			this.node = node;
+			socket = new Socket(InetAddress.getLoopbackAddress(), getLinkPort(node));
+			socket.setTcpNoDelay(true);
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			Thread reader = new Thread(this::readReplies, "node-" + index + "-link-" + node);
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		private void readReplies()
+		{
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				while (true) {
+					long session = in.readLong();
+					int line = in.readInt();
+					boolean finished = in.readBoolean();
+					int owner = in.readInt();
+					byte[] response = new byte[in.readInt()];
+					in.readFully(response);
+					int stateLength = in.readInt();
+					byte[] state = null;
+					if (stateLength >= 0) {
+						state = new byte[stateLength];
+						in.readFully(state);
+					}
+					listener.replied(new Reply(session, line, finished, owner, new String(response, StandardCharsets.UTF_8), state));
+				}
+			}
+			catch (IOException exception) {
+				// the node has gone, or this node is closing
+			}
+			dropLink(this);
+			try {
+				socket.close();
+			}
+			catch (IOException exception) {
+				// nothing is left to clean up
+			}
+			listener.linkFailed(node);
+		}
+	}
+}
@@ -8,7 +8,9 @@
  * 
  * The way this is used is: Commands are already checked for being valid
  * command words. If the user entered an invalid command (a word that is not
- * known) then the command word is <null>.
+ * known) then the command word is <null> and the command id is
+ * CommandWords.UNKNOWN. Otherwise the command id tells which command word
+ * it is, so the command can be handled without comparing strings.
  *
  * If the command had only one word, then the second word is <null>.
  * 
@@ -18,22 +20,44 @@
 
 public class Command
 {
+    private int commandId;
     private String commandWord;
     private String secondWord;
 
     /**
      * Create a command object. First and second word must be supplied, but
      * either one (or both) can be null.
+     * @param commandId The id of the first word in CommandWords. CommandWords.UNKNOWN
+     *                  if the command was not recognised.
      * @param firstWord The first word of the command. Null if the command
      *                  was not recognised.
      * @param secondWord The second word of the command.
      */
-    public Command(String firstWord, String secondWord)
+    public Command(int commandId, String firstWord, String secondWord)
     {
+        set(commandId, firstWord, secondWord);
+    }
+
+    /**
+     * Replace the contents of this command. Used by Parser, which reuses one
+     * Command object for every line it reads.
+     */
+    void set(int commandId, String firstWord, String secondWord)
+    {
+        this.commandId = commandId;
         commandWord = firstWord;
         this.secondWord = secondWord;
     }
 
+    /**
+     * @return The id of the command word in CommandWords, or
+     * CommandWords.UNKNOWN if the command was not understood.
+     */
+    public int getCommandId()
+    {
+        return commandId;
+    }
+
     /**
      * Return the command word (the first word) of this command. If the
      * command was not understood, the result is null.
@@ -58,7 +82,7 @@ public class Command
      */
     public boolean isUnknown()
     {
-        return (commandWord == null);
+        return (commandId == CommandWords.UNKNOWN);
     }
 
     /**
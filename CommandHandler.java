@@ -0,0 +1,20 @@
+/**
+ * This interface is part of the "Center of Madniverse" application.
+ *
+ * A CommandHandler carries out one command word. Every command word in
+ * CommandWords has its handler, so Game can execute a command by looking
+ * up the handler for its command id. New command words can be added to the
+ * game by registering them with a handler (see CommandWords.addCommand),
+ * without changing Game.
+ */
+
+public interface CommandHandler
+{
+    /**
+     * Carry out the command in the given game.
+     * @param game The game in which the command was entered.
+     * @param command The command to be carried out.
+     * @return true If the command ends the game, false otherwise.
+     */
+    boolean execute(Game game, Command command);
+}
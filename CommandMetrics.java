@@ -0,0 +1,85 @@
+/**
+ * CommandMetrics class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * How often one command word has been carried out, and how long it took, over all games in the program.
+ * Each command word has one CommandMetrics, registered as a JMX MBean by GameMetrics.
+ *
+ */
+
+public class CommandMetrics implements CommandMetricsMBean
+{
+	private String command;
+	private LatencyHistogram latency;
+
+	/**
+	 * Precondition: command != null
+	 * Postcondition: Metrics with nothing recorded constructed
+	 */
+	public CommandMetrics(String command)
+	{
+		this.command = command;
+		latency = new LatencyHistogram();
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: One more execution of the command, taking nanos, is counted
+	 */
+	public void record(long nanos)
+	{
+		latency.record(nanos);
+	}
+
+	public String getCommand()
+	{
+		return command;
+	}
+
+	public long getCount()
+	{
+		return latency.getCount();
+	}
+
+	public double getMeanNanos()
+	{
+		return latency.getMean();
+	}
+
+	public long getP50Nanos()
+	{
+		return latency.getPercentile(50);
+	}
+
+	public long getP90Nanos()
+	{
+		return latency.getPercentile(90);
+	}
+
+	public long getP99Nanos()
+	{
+		return latency.getPercentile(99);
+	}
+
+	public long getP999Nanos()
+	{
+		return latency.getPercentile(99.9);
+	}
+
+	public long getMaxNanos()
+	{
+		return latency.getMax();
+	}
+
+	public void reset()
+	{
+		latency.reset();
+	}
+
+	/**
+	 * @return A one-line summary, such as "go: count=12 p50=1023 p99=4095 max=4011 ns".
+	 */
+	public String toString()
+	{
+		return command + ": count=" + getCount() + " p50=" + getP50Nanos() + " p99=" + getP99Nanos() + " max=" + getMaxNanos() + " ns";
+	}
+}
@@ -0,0 +1,27 @@
+/**
+ * CommandMetricsMBean interface.
+ * This is part of the "Center of Madniverse" adventure game.
+ * The management interface of CommandMetrics, as seen through JMX. Durations are in nanoseconds.
+ *
+ */
+
+public interface CommandMetricsMBean
+{
+	String getCommand();
+
+	long getCount();
+
+	double getMeanNanos();
+
+	long getP50Nanos();
+
+	long getP90Nanos();
+
+	long getP99Nanos();
+
+	long getP999Nanos();
+
+	long getMaxNanos();
+
+	void reset();
+}
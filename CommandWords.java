@@ -1,8 +1,20 @@
+import java.util.Arrays;
+
 /**
- * This class is part of the "Center of Madniverse" application. 
- * 
+ * This class is part of the "Center of Madniverse" application.
+ *
  * This class holds an enumeration of all command words known to the game.
- * It is used to recognise commands as they are typed in.
+ * It is used to recognise commands as they are typed in, and to find the
+ * CommandHandler that carries out each command.
+ *
+ * Every command word has an int id. Words are found through a perfect hash
+ * table: the hash seed is chosen so that no two command words share a slot,
+ * so recognising a word is one hash, one slot and one comparison, and works
+ * directly on the characters of the input line without creating a String.
+ * The handlers are kept in an array indexed by command id.
+ *
+ * One CommandWords object may be shared by many games. Command words must
+ * therefore all be added before the first game using it is started.
  *
  * @author  Michael Kölling and David J. Barnes
  * Modified
@@ -10,41 +22,172 @@
 
 public class CommandWords
 {
-    // a constant array that holds all valid command words
+    // Command ids
+    public static final int UNKNOWN = -1;
+    public static final int GO = 0;
+    public static final int QUIT = 1;
+    public static final int HELP = 2;
+    public static final int BACK = 3;
+    public static final int SEARCH = 4;
+    public static final int GET = 5;
+    public static final int REMOVE = 6;
+    public static final int THROW = 7;
+    public static final int TAKE = 8;
+    public static final int GOTO = 9;
+    public static final int UNDO = 10;
+
+    // a constant array that holds all valid command words, indexed by command id
     private static final String[] validCommands = {
-        "go", "quit", "help", "back", "search", "get", "remove", "throw", "take"
+        "go", "quit", "help", "back", "search", "get", "remove", "throw", "take", "goto", "undo"
     };
 
+    private String[] words;     // command words, indexed by command id
+    private CommandHandler[] handlers;  // indexed by command id
+    private int[] table;        // command id + 1 by slot; 0 for an empty slot
+    private int seed;
+
     /**
-     * Constructor - initialise the command words.
+     * Constructor - initialise the command words. They have no handlers yet
+     * (see Game.createCommandWords).
      */
     public CommandWords()
     {
-        // nothing to do at the moment...
+        words = validCommands.clone();
+        handlers = new CommandHandler[words.length];
+        buildTable();
     }
 
     /**
-     * Check whether a given String is a valid command word. 
+     * Add a new command word to the game.
+     * Precondition: word is not already a command word && handler != null
+     * Postcondition: Returns the id of the new command word; it is carried out by handler
+     */
+    public int addCommand(String word, CommandHandler handler)
+    {
+        if (isCommand(word)) {
+            throw new IllegalArgumentException("Already a command word: " + word);
+        }
+        int commandId = words.length;
+        words = Arrays.copyOf(words, commandId + 1);
+        handlers = Arrays.copyOf(handlers, commandId + 1);
+        words[commandId] = word;
+        handlers[commandId] = handler;
+        buildTable();
+        return commandId;
+    }
+
+    /**
+     * Precondition: 0 <= commandId < number of command words
+     * Postcondition: The command word with the given id is carried out by handler
+     */
+    public void setHandler(int commandId, CommandHandler handler)
+    {
+        handlers[commandId] = handler;
+    }
+
+    /**
+     * Precondition: 0 <= commandId < number of command words
+     * Postcondition: Returns the handler of the command word with the given id, or null if it has none
+     */
+    public CommandHandler getHandler(int commandId)
+    {
+        return handlers[commandId];
+    }
+
+    /**
+     * Check whether a given String is a valid command word.
      * @return true if it is, false if it isn't.
      */
     public boolean isCommand(String aString)
     {
-        for(int i = 0; i < validCommands.length; i++) {
-            if(validCommands[i].equals(aString))
-                return true;
+        return aString != null && getCommandId(aString.toCharArray(), 0, aString.length()) != UNKNOWN;
+    }
+
+    /**
+     * Find the command word held in characters start to start + length - 1 of text.
+     * Precondition: text != null && the range lies within text
+     * Postcondition: Returns the id of the command word, or UNKNOWN if the characters are not a command word
+     */
+    public int getCommandId(char[] text, int start, int length)
+    {
+        int id = table[hash(text, start, length, seed) & (table.length - 1)] - 1;
+        if (id == UNKNOWN) {
+            return UNKNOWN;
+        }
+        String word = words[id];
+        if (word.length() != length) {
+            return UNKNOWN;
+        }
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != text[start + i]) {
+                return UNKNOWN;
+            }
         }
-        // if we get here, the string was not found in the commands
-        return false;
+        return id;
     }
 
     /**
-     * Print all valid commands to System.out.
+     * Precondition: 0 <= commandId < number of command words
+     * Postcondition: Returns the command word with the given id
      */
-    public void showAll() 
+    public String getWord(int commandId)
+    {
+        return words[commandId];
+    }
+
+    /**
+     * Print all valid commands to the given output.
+     */
+    public void showAll(Output out)
+    {
+        for(String command: words) {
+            out.print(command + "  ");
+        }
+        out.println();
+    }
+
+    /**
+     * Helper method that finds a seed for which every command word hashes to
+     * a different slot, growing the table if no seed works.
+     */
+    private void buildTable()
+    {
+        int size = Integer.highestOneBit(words.length) * 4;
+        while (true) {
+            for (seed = 1; seed < 1000; seed++) {
+                table = placeWords(size);
+                if (table != null) {
+                    return;
+                }
+            }
+            size *= 2;
+        }
+    }
+
+    /**
+     * Helper method that places every word in a table of the given size using
+     * the current seed; returns null if two words collide.
+     */
+    private int[] placeWords(int size)
+    {
+        int[] slots = new int[size];
+        for (int id = 0; id < words.length; id++) {
+            char[] word = words[id].toCharArray();
+            int slot = hash(word, 0, word.length, seed) & (size - 1);
+            if (slots[slot] != 0) {
+                return null;
+            }
+            slots[slot] = id + 1;
+        }
+        return slots;
+    }
+
+    private static int hash(char[] text, int start, int length, int seed)
     {
-        for(String command: validCommands) {
-            System.out.print(command + "  ");
+        int hash = seed * 0x9E3779B9;
+        for (int i = start; i < start + length; i++) {
+            hash = (hash ^ text[i]) * 0x01000193;
         }
-        System.out.println();
+        return hash ^ (hash >>> 15);
     }
 }
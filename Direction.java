@@ -0,0 +1,69 @@
+import java.util.HashMap;
+
+/**
+ * Representations for the directions in which a room can have an exit,
+ * along with the word the player types for each.
+ *
+ * Exits in these directions are stored by a Room in an array indexed by the
+ * direction's ordinal. Exits with any other name (such as "portal") are
+ * still possible; they are kept as named exits.
+ */
+
+public enum Direction
+{
+    NORTH("north"), EAST("east"), SOUTH("south"), WEST("west"), UP("up"), DOWN("down");
+
+    private static final Direction[] ALL = values();
+    private static final HashMap<String, Direction> BY_WORD = new HashMap<String, Direction>();
+
+    static {
+        for (Direction direction : ALL) {
+            BY_WORD.put(direction.word, direction);
+        }
+    }
+
+    private String word;
+
+    /**
+     * Initialise with the corresponding word.
+     * @param word The word the player types for this direction.
+     */
+    Direction(String word)
+    {
+        this.word = word;
+    }
+
+    /**
+     * @return The number of directions.
+     */
+    public static int count()
+    {
+        return ALL.length;
+    }
+
+    /**
+     * Precondition: 0 <= ordinal < count()
+     * Postcondition: Returns the direction with the given ordinal
+     */
+    public static Direction get(int ordinal)
+    {
+        return ALL[ordinal];
+    }
+
+    /**
+     * Precondition: None
+     * Postcondition: Returns the direction for the given word, or null if it is not one of the directions
+     */
+    public static Direction fromWord(String word)
+    {
+        return BY_WORD.get(word);
+    }
+
+    /**
+     * @return The direction as a word.
+     */
+    public String toString()
+    {
+        return word;
+    }
+}
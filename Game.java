@@ -1,5 +1,13 @@
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
 
 /**
  *  This class is the main class of the "Center of Madniverse" application. 
@@ -8,11 +16,17 @@ import java.util.Iterator;
  *  The object of the game is to destroy the quantum computer by which the player finds himself trapped.
  * 
  *  To play this game, create an instance of this class and call the "play"
- *  method.
+ *  method. A game may read from and write to any streams, so several games
+ *  can be played at once in one program. A game can also be driven one line
+ *  at a time, with "start" and "handleLine", by a caller that receives the
+ *  player's input itself (see GameServer); it then never waits for input.
+ *  The math challenges are kept as a few numbers saying which challenge
+ *  is being answered, so the game waits for an answer the same way it waits
+ *  for a command.
  * 
- *  This main class creates and initialises all the others: it creates all
- *  rooms and items, creates the parser and starts the game.  It also evaluates and
- *  executes the commands that the parser returns.
+ *  This main class creates and initialises all the others: it takes the
+ *  rooms and items from a shared World, creates the parser and starts the game.
+ *  It also evaluates and executes the commands that the parser returns.
  * 
  * @author  Michael Kölling and David J. Barnes
  * Modified
@@ -20,111 +34,238 @@ import java.util.Iterator;
 
 public class Game 
 {
+    private static final int CHALLENGES = 5;
+    private static CommandWords standardCommands;   // shared by games without extra command words
+
     private Parser parser;
+    private CommandWords commands;
+    private Output out;
+    private World world;
     private Room currentRoom;
-    private ArrayList<Room> roomStack;
-    private Room mainRoom;
+    private RoomHistory history;        // ids of the rooms to go back to
+    private Item lastItem;              // item of the last get or remove, for undo; null if there is nothing to undo
+    private boolean lastItemTaken;      // whether that action added lastItem to the inventory
+    private Inventory inventory;
     private Room lockedRoom;
-    private Room teleport;
     private Room challengeRoom;
+    private SplittableRandom random;    // this game's own source of teleport destinations and challenges
+    private int challenge;              // the math challenge being answered, 1 to CHALLENGES; 0 if none is
+    private long challengeSeed;         // the numbers of the form of that challenge posed are drawn from this seed
+    private long challengeStart;        // System.nanoTime() when the challenges were started
+    private SessionJournal journal;     // records every command played; null if the game is not journaled
+    private RoomPresence.Occupant occupant;     // this player among the others in the rooms; null if playing alone
+    private GameMetrics metrics;
+    private CommandMetrics[] commandMetrics;    // by command id; looked up the first time a command is used
+    private boolean resumed;            // restored or replayed, so the game was counted when it first started
         
     /**
      * Create the game and initialise its internal map.
      * Precondition: None
-     * Postcondition: Game will be read to play after constructor finishes
+     * Postcondition: Game will be read to play on the terminal after constructor finishes
      */
     public Game() 
     {
-        createRooms();
-        parser = new Parser();
-        roomStack = new ArrayList<Room>();
+        this(System.in, Output.toConsole());
+    }
+
+    /**
+     * Create the game on the standard map, reading commands from in and writing all messages to out.
+     * Precondition: in != null && out != null
+     * Postcondition: Game will be read to play after constructor finishes
+     */
+    public Game(InputStream in, Output out)
+    {
+        this(World.getStandardWorld(), in, out);
     }
 
     /**
-     * Create all the rooms and link their exits together.
+     * Create the game on the given map, reading commands from in and writing all messages to out.
+     * The world is shared, not copied: this game only keeps the player's own progress.
+     * Precondition: world != null && in != null && out != null
+     * Postcondition: Game will be read to play after constructor finishes
+     */
+    public Game(World world, InputStream in, Output out)
+    {
+        this(world, getStandardCommandWords(), in, out);
+    }
+
+    /**
+     * Create the game on the given map with the given command words, reading commands from in and
+     * writing all messages to out. Use this to play with command words added by an extension.
+     * Precondition: world != null && commands != null && in != null && out != null
+     * Postcondition: Game will be read to play after constructor finishes
+     */
+    public Game(World world, CommandWords commands, InputStream in, Output out)
+    {
+        this.world = world;
+        this.commands = commands;
+        this.out = out;
+        currentRoom = world.getStartRoom();
+        lockedRoom = world.getLockedRoom();
+        challengeRoom = world.getChallengeRoom();
+        parser = new Parser(commands, in, out);
+        history = new RoomHistory(RoomHistory.DEFAULT_CAPACITY);
+        inventory = new Inventory(world);
+        random = new SplittableRandom();
+        metrics = GameMetrics.get();
+        commandMetrics = new CommandMetrics[0];
+    }
+
+    /**
+     * Create the command words of the game, each with the handler that carries it out.
+     * An extension can add its own command words to the result and pass it to a new Game.
      * Precondition: None
-     * Postcondition: Rooms and items are initialized
-     */
-    private void createRooms()
-    {
-        Room centerOfMadness, natureSimulationRoom, eatery, entertainmentRoom, medicineRoom, restroom, chemLab, mathGameRoom, particleCollider, teleport;
-      
-        // create the rooms
-        centerOfMadness = new Room("in the Center of Madness, the main compartment of your own quantum computer's hostage chamber");
-        natureSimulationRoom = new Room("in a nature simulation room that looks like a forest and has organisms");
-        eatery = new Room("in an eatery (food you can't eat right now!!!)");
-        entertainmentRoom = new Room("in an entertainment room");
-        medicineRoom = new Room("in a medicine room");
-        restroom = new Room("in a restroom for you to relieve yourself");
-        chemLab = new Room("in a chemistry lab with some (perhaps) useful things", false);
-        mathGameRoom = new Room("in a room with a computer posing math challenges (what could possibly be unveiled if you solve the challenges?)");
-        particleCollider = new Room("in a particle collider that is (luckily) not running right now", false);
-        teleport = new Room();
-        
-        Item bluePill, purplePill, coolingEngine, potassium, sodium, bomb, hat, key, toilet, pizza, salad, birdLitter;
-        
-        // Create the items
-        bluePill = new Item("bluepill", Item.MEDICINE, "a blue pill");
-        purplePill = new Item("purplepill", Item.MEDICINE, "a purple pill");
-        coolingEngine = new Item("engine", Item.STATIONARY | Item.TARGET, "the cooling engine of the CPU");
-        potassium = new Item("potassium", Item.THROWABLE, "1 g potassium");
-        sodium = new Item("sodium", Item.THROWABLE, "1 g sodium");
-        bomb = new Item("bomb", Item.THROWABLE, "an atomic bomb");
-        hat = new Item("hat", Item.WEARABLE, "a hat");
-        key = new Item("key", Item.KEY, "a key you may or may not need");
-        toilet = new Item("toilet", Item.STATIONARY, "a toilet containing some of your previous material");
-        pizza = new Item("pizza", 0, "a pizza");
-        salad = new Item("salad", 0, "a salad");
-        birdLitter = new Item("litter", 0, "bird litter");
-        
-        
-        // initialise room exits and item locations
-        centerOfMadness.setExit("north", mathGameRoom);
-        centerOfMadness.setExit("west", eatery);
-        centerOfMadness.setExit("south",  entertainmentRoom);
-        centerOfMadness.setExit("east",  teleport);
-        centerOfMadness.addItem(bluePill);
-        centerOfMadness.addItem(coolingEngine);
-
-        mathGameRoom.setExit("south",  centerOfMadness);
-        mathGameRoom.setExit("west",  medicineRoom);
-        mathGameRoom.setExit("east",  chemLab);
-        mathGameRoom.addItem(key);
-        
-        eatery.setExit("east",  centerOfMadness);
-        eatery.setExit("west",  natureSimulationRoom);
-        eatery.setExit("north",  medicineRoom);
-        eatery.addItem(pizza);
-        eatery.addItem(salad);
-        
-        entertainmentRoom.setExit("north",  centerOfMadness);
-        entertainmentRoom.setExit("south",  restroom);
-        entertainmentRoom.addItem(hat);
-        
-        chemLab.setExit("west", mathGameRoom);
-        chemLab.setExit("east",  particleCollider);
-        chemLab.setExit("south",  teleport);
-        chemLab.addItem(potassium);
-        chemLab.addItem(sodium);
-        chemLab.addItem(bomb);
-        
-        medicineRoom.setExit("east",  mathGameRoom);
-        medicineRoom.setExit("south",  eatery);
-        medicineRoom.addItem(purplePill);
-        
-        natureSimulationRoom.setExit("east",  eatery);
-        natureSimulationRoom.addItem(birdLitter);
-        
-        restroom.setExit("north",  entertainmentRoom);
-        restroom.addItem(toilet);
-        
-        particleCollider.setExit("west",  chemLab);
-        
-        currentRoom = centerOfMadness;  // start game in centerOfMadness
-        mainRoom = centerOfMadness; // Contains the target to be blown up
-        lockedRoom = chemLab; // Key needed to unlock enter room
-        this.teleport = teleport;
-        challengeRoom = mathGameRoom;
+     * Postcondition: Returns new command words with a handler for every built-in command
+     */
+    public static CommandWords createCommandWords()
+    {
+        CommandWords commands = new CommandWords();
+        commands.setHandler(CommandWords.HELP, (game, command) -> { game.printHelp(); return false; });
+        commands.setHandler(CommandWords.GO, (game, command) -> { game.goRoom(command); return false; });
+        commands.setHandler(CommandWords.GOTO, (game, command) -> { game.goTo(command); return false; });
+        commands.setHandler(CommandWords.UNDO, (game, command) -> { game.undo(command); return false; });
+        commands.setHandler(CommandWords.BACK, (game, command) -> { game.goBack(command); return false; });
+        commands.setHandler(CommandWords.SEARCH, (game, command) -> { game.searchRoom(command); return false; });
+        commands.setHandler(CommandWords.GET, (game, command) -> { game.getItem(command); return false; });
+        commands.setHandler(CommandWords.REMOVE, (game, command) -> { game.removeItem(command); return false; });
+        commands.setHandler(CommandWords.THROW, (game, command) -> game.throwItem(command));
+        commands.setHandler(CommandWords.TAKE, (game, command) -> game.takeItem(command));
+        commands.setHandler(CommandWords.QUIT, (game, command) -> game.quit(command));
+        return commands;
+    }
+
+    /**
+     * @return The built-in command words, shared by every game that has no extra command words.
+     */
+    private static synchronized CommandWords getStandardCommandWords()
+    {
+        if (standardCommands == null) {
+            standardCommands = createCommandWords();
+        }
+        return standardCommands;
+    }
+
+    /**
+     * @return The map this game is played on.
+     */
+    public World getWorld()
+    {
+        return world;
+    }
+
+    /**
+     * @return The room the player is in.
+     */
+    public Room getCurrentRoom()
+    {
+        return currentRoom;
+    }
+
+    /**
+     * @return The items the player has picked up.
+     */
+    public Inventory getInventory()
+    {
+        return inventory;
+    }
+
+    /**
+     * @return The output to which all messages of this game are written.
+     */
+    public Output getOutput()
+    {
+        return out;
+    }
+
+    /**
+     * Set the prompt printed before the player's every line; the empty string prints no prompt,
+     * as when a recorded script is replayed.
+     * Precondition: prompt != null
+     * Postcondition: Every later line is read after printing prompt
+     */
+    public void setPrompt(String prompt)
+    {
+        parser.setPrompt(prompt);
+    }
+
+    /**
+     * Replace the random source of this game, for instance with one made from a fixed seed so
+     * that a recorded game is replayed with exactly the same teleports and challenges.
+     * Precondition: random != null
+     * Postcondition: All later random choices of this game are drawn from random
+     */
+    public void setRandom(SplittableRandom random)
+    {
+        this.random = random;
+    }
+
+    /**
+     * Play in a world shared with other players: an item one of them holds is gone from its room for the
+     * others until it is put back or its holder leaves the game. Call before the game starts.
+     * Precondition: items holds the items of this game's world; the game is not journaled
+     * Postcondition: Every later get, remove and search of this game uses items
+     */
+    public void shareItems(SharedItems items)
+    {
+        inventory = new Inventory(world, items);
+    }
+
+    /**
+     * Play among other players who see each other in the rooms: the others in a room are told when the player
+     * arrives, leaves, picks something up or puts it back, and the player is told the same of them. What
+     * happened is printed before the player's next prompt, or whenever deliverEvents is called.
+     * Call before the game starts.
+     * Precondition: presence holds the rooms of this game's world
+     * Postcondition: The player will be seen in presence, and will be told what happens around them; onEvent,
+     *                if not null, is run whenever there is something to tell (see RoomPresence.join)
+     */
+    public void shareRooms(RoomPresence presence, Runnable onEvent)
+    {
+        occupant = presence.join(onEvent);
+    }
+
+    /**
+     * Print what has happened around the player since they were last told, followed by a new prompt, without
+     * waiting for the player's next line. Nothing is printed while the math challenges are posed.
+     * Precondition: start has been called and the game has not finished
+     * Postcondition: Returns whether anything was printed
+     */
+    public boolean deliverEvents()
+    {
+        if (occupant == null || challenge != 0 || !occupant.printEvents(out)) {
+            return false;
+        }
+        parser.printPrompt();
+        return true;
+    }
+
+    /**
+     * Leave a world shared with other players, putting back every item the player holds. The game
+     * does this itself when it ends; call it if the game is abandoned before, for instance when
+     * the player disconnects.
+     * Precondition: None
+     * Postcondition: In a shared world, the player holds no items and is in no room; otherwise nothing changes
+     */
+    public void leave()
+    {
+        if (inventory.isShared()) {
+            inventory.removeAll();
+        }
+        if (occupant != null) {
+            occupant.leave(occupant.getName() + " has left the game.");
+        }
+    }
+
+    /**
+     * Record every line played from now on in the given journal (see SessionStore): each command,
+     * and each answer to the math challenges.
+     * Precondition: journal != null
+     * Postcondition: Every later line is appended to journal once it has been carried out
+     */
+    public void setJournal(SessionJournal journal)
+    {
+        this.journal = journal;
+        parser.setRecording(true);
     }
 
     /**
@@ -132,6 +273,7 @@ public class Game
      */
     public void play() 
     {            
+        recordStart();
         printWelcome();
 
         // Enter the main command loop.  Here we repeatedly read commands and
@@ -139,74 +281,309 @@ public class Game
                 
         boolean finished = false;
         while (! finished) {
-            Command command = parser.getCommand();
-            finished = processCommand(command);
+            printEvents();
+            parser.readNextLine();
+            finished = takeTurn();
         }
-        System.out.println("Thank you for playing.  Good bye.");
+        end();
     }
 
     /**
-     * Print out the opening message for the player.
+     * Begin a game driven by handleLine instead of play: print the opening message and the prompt.
      * Precondition: None
-     * Postcondition: Player receives message as console output
+     * Postcondition: The player has been welcomed and prompted for the first line
      */
-    private void printWelcome()
+    public void start()
     {
-        System.out.println();
-        System.out.println("Welcome to the Center of the Madniverse!");
-        System.out.println("It is 2080. You are Dr. Warren. You have been trapped by your own quantum computer, and it is your job to escape by destroying it.");
-        System.out.println("You need to find the correct item to throw at the cooling engine to win the game.");
-        System.out.println("Type 'help' if you need help.");
-        System.out.println();
-        System.out.println(currentRoom.getLongDescription());
+        recordStart();
+        printWelcome();
+        printEvents();
+        parser.printPrompt();
     }
 
     /**
-     * Given a command, process (that is: execute) the command.
-     * @param command The command to be processed.
-     * @return true If the command ends the game, false otherwise.
-     * Precondition: None
-     * Postcondition: If command is understood, executes appropriate action; otherwise prints error message
+     * Carry out one line entered by the player: a command, or an answer while the math challenges are posed.
+     * Precondition: start has been called, the game has not finished and input is a single line
+     * Postcondition: Returns true if the line ended the game, after saying good bye; otherwise the player
+     *                has been prompted for the next line
      */
-    private boolean processCommand(Command command) 
+    public boolean handleLine(CharSequence input)
     {
-        boolean wantToQuit = false;
+        parser.setLine(input);
+        if (takeTurn()) {
+            end();
+            return true;
+        }
+        printEvents();
+        parser.printPrompt();
+        return false;
+    }
+
+    /**
+     * Helper method that counts the game as started, unless it is resumed from where an earlier run left it.
+     */
+    private void recordStart()
+    {
+        if (!resumed) {
+            metrics.recordGameStarted();
+        }
+    }
+
+    /**
+     * Helper method that carries out the current line of the parser and journals it.
+     * @return true if the line ended the game.
+     */
+    private boolean takeTurn()
+    {
+        boolean finished = step();
+        if (journal != null) {
+            journal.append(parser.getRecord());
+            parser.clearRecord();
+            if (!finished && journal.isSnapshotDue()) {
+                journal.snapshot(saveState());
+            }
+        }
+        return finished;
+    }
 
-        if(command.isUnknown()) {
-            System.out.println("I don't know what you mean...");
+    /**
+     * Helper method that carries out the current line of the parser: an answer if a math challenge is
+     * posed, a command otherwise.
+     * @return true if the line ended the game.
+     */
+    private boolean step()
+    {
+        if (challenge != 0) {
+            answerChallenge(parser.getLineText());
             return false;
         }
+        return processCommand(parser.parseCommand());
+    }
+
+    /**
+     * Helper method that prints what has happened around the player, unless a math challenge is posed.
+     */
+    private void printEvents()
+    {
+        if (occupant != null && challenge == 0) {
+            occupant.printEvents(out);
+        }
+    }
+
+    /**
+     * Helper method that tells the others where the player has gone, once the player is in currentRoom,
+     * and tells the player who is there.
+     * @param from The room the player was in.
+     * @param teleported Whether the player went by teleport.
+     */
+    private void announceMove(Room from, boolean teleported)
+    {
+        if (occupant == null || currentRoom == from) {
+            return;
+        }
+        String name = occupant.getName();
+        occupant.moveTo(currentRoom.getId(),
+                teleported ? name + " has vanished into the teleport." : name + " has left.",
+                teleported ? name + " has appeared out of nowhere." : name + " has arrived.");
+        printOthers();
+    }
+
+    /**
+     * Helper method that tells the player who else is in the room.
+     */
+    private void printOthers()
+    {
+        String others = occupant.describeOthers();
+        if (others != null) {
+            out.println("Also here: " + others);
+        }
+    }
+
+    /**
+     * Helper method that tells the others in the room what the player has done.
+     */
+    private void announce(String action)
+    {
+        if (occupant != null) {
+            occupant.announce(occupant.getName() + " " + action);
+        }
+    }
 
-        String commandWord = command.getCommandWord();
-        if (commandWord.equals("help")) {
-            printHelp();
+    /**
+     * Helper method that says good bye once the game has ended.
+     */
+    private void end()
+    {
+        leave();
+        out.println("Thank you for playing.  Good bye.");
+        out.flush();
+        if (journal != null) {
+            journal.finish();
         }
-        else if (commandWord.equals("go")) {
-            goRoom(command);
+    }
+
+    /**
+     * Carry out recorded commands, one per line, without printing anything; a command that
+     * posed the math challenges is followed by the answers given, which may stop short. Used to recover a journaled game.
+     * The commands were counted in the metrics when they were first carried out, so they are not counted again.
+     * Precondition: recorded != null
+     * Postcondition: Every recorded command has been carried out; returns true if one of them ended the game
+     */
+    public boolean replay(InputStream recorded)
+    {
+        Parser liveParser = parser;
+        Output liveOut = out;
+        GameMetrics liveMetrics = metrics;
+        CommandMetrics[] liveCommandMetrics = commandMetrics;
+        out = new Output(OutputSink.DISCARD);
+        parser = new Parser(commands, recorded, out);
+        metrics = GameMetrics.discarded();
+        commandMetrics = new CommandMetrics[0];
+        resumed = true;
+        try {
+            while (true) {
+                parser.readNextLine();
+                if (step()) {
+                    return true;
+                }
+            }
         }
-        else if (commandWord.equals("back")) {
-        	goBack(command);
+        catch (NoSuchElementException exception) {
+            return false;   // all recorded commands have been carried out
         }
-        else if (commandWord.equals("search")) {
-        	searchRoom(command);
+        finally {
+            parser = liveParser;
+            out = liveOut;
+            metrics = liveMetrics;
+            commandMetrics = liveCommandMetrics;
         }
-        else if (commandWord.equals("get")) {
-        	getItem(command);
+    }
+
+    /**
+     * Save the player's progress: the room, the rooms to go back to, the items held, the item action that
+     * may be undone, the math challenge being answered and the state of the random source. To keep the saved state small, the random source is replaced by a new one made from
+     * a seed drawn from it, and only that seed is saved.
+     * Precondition: None
+     * Postcondition: Returns the saved state, which restoreState accepts
+     */
+    public byte[] saveState()
+    {
+        long seed = random.nextLong();
+        random = new SplittableRandom(seed);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream state = new DataOutputStream(bytes);
+            state.writeLong(seed);
+            state.writeInt(currentRoom.getId());
+            state.writeInt(history.getCapacity());
+            state.writeInt(history.size());
+            for (int age = history.size() - 1; age >= 0; age--) {
+                state.writeInt(history.get(age));
+            }
+            state.writeInt(lastItem == null ? -1 : lastItem.getId());
+            state.writeBoolean(lastItemTaken);
+            state.writeInt(challenge);
+            state.writeLong(challengeSeed);
+            long[] held = inventory.getHeldBits();
+            state.writeInt(held.length);
+            for (long bits : held) {
+                state.writeLong(bits);
+            }
+            return bytes.toByteArray();
         }
-        else if (commandWord.equals("remove")) {
-        	removeItem(command);
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);  // cannot happen when writing to memory
         }
-        else if (commandWord.equals("throw")) {
-        	wantToQuit = throwItem(command);
+    }
+
+    /**
+     * Precondition: state was returned by saveState of a game of the same world
+     * Postcondition: The player's progress is as it was when state was saved
+     */
+    public void restoreState(byte[] state) throws IOException
+    {
+        resumed = true;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(state));
+        random = new SplittableRandom(in.readLong());
+        currentRoom = world.getRoom(in.readInt());
+        history = new RoomHistory(in.readInt());
+        for (int i = in.readInt(); i > 0; i--) {
+            history.push(in.readInt());
+        }
+        int item = in.readInt();
+        lastItem = item == -1 ? null : world.getItem(item);
+        lastItemTaken = in.readBoolean();
+        challenge = in.readInt();
+        challengeSeed = in.readLong();
+        challengeStart = System.nanoTime();
+        long[] held = new long[in.readInt()];
+        for (int i = 0; i < held.length; i++) {
+            held[i] = in.readLong();
         }
-        else if (commandWord.equals("take")) {
-        	wantToQuit = takeItem(command);
+        inventory.setHeldBits(held);
+    }
+
+    /**
+     * Print out the opening message for the player.
+     * Precondition: None
+     * Postcondition: Player receives message as console output
+     */
+    private void printWelcome()
+    {
+        out.println();
+        out.println("Welcome to the Center of the Madniverse!");
+        out.println("It is 2080. You are Dr. Warren. You have been trapped by your own quantum computer, and it is your job to escape by destroying it.");
+        out.println("You need to find the correct item to throw at the cooling engine to win the game.");
+        out.println("Type 'help' if you need help.");
+        out.println();
+        out.println(currentRoom.getLongDescription());
+        if (occupant != null) {
+            out.println("The other players know you as " + occupant.getName() + ".");
+            occupant.moveTo(currentRoom.getId(), "", occupant.getName() + " has joined the game.");
+            printOthers();
         }
-        else if (commandWord.equals("quit")) {
-            wantToQuit = quit(command);
+        if (challenge != 0) {
+            out.println("You are still trapped in the entrance until you correctly solve ALL of the challenges.");
+            challengeAnswer(true);
         }
-        // else command not recognised.
-        return wantToQuit;
+    }
+
+    /**
+     * Given a command, process (that is: execute) the command.
+     * @param command The command to be processed.
+     * @return true If the command ends the game, false otherwise.
+     * Precondition: None
+     * Postcondition: If command is understood, executes appropriate action; otherwise prints error message.
+     *                A command word without a handler is not understood
+     */
+    private boolean processCommand(Command command) 
+    {
+        CommandHandler handler = command.isUnknown() ? null : commands.getHandler(command.getCommandId());
+        if(handler == null) {
+            metrics.recordUnknownCommand();
+            out.println("I don't know what you mean...");
+            return false;
+        }
+
+        int commandId = command.getCommandId();
+        long start = System.nanoTime();
+        boolean finished = handler.execute(this, command);
+        getCommandMetrics(commandId).record(System.nanoTime() - start);
+        return finished;
+    }
+
+    /**
+     * Helper method that returns the metrics of the command word with the given id.
+     */
+    private CommandMetrics getCommandMetrics(int commandId)
+    {
+        if (commandId >= commandMetrics.length) {
+            commandMetrics = Arrays.copyOf(commandMetrics, commandId + 1);
+        }
+        if (commandMetrics[commandId] == null) {
+            commandMetrics[commandId] = metrics.forCommand(commands.getWord(commandId));
+        }
+        return commandMetrics[commandId];
     }
 
     // implementations of user commands:
@@ -217,8 +594,8 @@ public class Game
      */
     private void printHelp() 
     {
-        System.out.println("Use the command words to perform various actions.");
-        System.out.println("Your command words are:");
+        out.println("Use the command words to perform various actions.");
+        out.println("Your command words are:");
         parser.showCommands();
     }
 
@@ -232,7 +609,7 @@ public class Game
     {
         if(!command.hasSecondWord()) {
             // if there is no second word, we don't know where to go...
-            System.out.println("Go where?");
+            out.println("Go where?");
             return;
         }
 
@@ -242,53 +619,172 @@ public class Game
         Room nextRoom = currentRoom.getExit(direction);
 
         if (nextRoom == null) {
-            System.out.println("There is no exit in that direction!");
+            out.println("There is no exit in that direction!");
         }
-        else if (nextRoom == teleport) {
-        	currentRoom = Room.getRandomRoomReference();
-        	System.out.println("You have been teleported.");
-        	roomStack.clear();
-        	System.out.println(currentRoom.getLongDescription());
+        else if (world.isTeleport(nextRoom)) {
+        	Room from = currentRoom;
+        	currentRoom = world.getTeleportDestination(nextRoom, random);
+        	metrics.recordTeleport();
+        	out.println("You have been teleported.");
+        	history.clear();
+        	out.println(currentRoom.getLongDescription());
+        	announceMove(from, true);
         }
         else {
         	if (nextRoom == lockedRoom) {
-        		if (Room.getAllFoundItemsWithCharacteristic(Item.KEY).size() == 0) {
-        			System.out.println("You need a key to enter this room.");
+        		if (!inventory.hasItemWithCharacteristic(Item.KEY)) {
+        			out.println("You need a key to enter this room.");
         			return;
         		}
         	}
-        	roomStack.add(currentRoom);
+        	history.push(currentRoom.getId());
+        	Room from = currentRoom;
             currentRoom = nextRoom;
-            System.out.println(currentRoom.getLongDescription());
+            out.println(currentRoom.getLongDescription());
+            announceMove(from, false);
         }
-        if (currentRoom == challengeRoom && Room.getAllFoundItemsWithCharacteristic(Item.KEY).size() == 0) {
+        if (currentRoom == challengeRoom && !inventory.hasItemWithCharacteristic(Item.KEY)) {
         	startChallenges();
         }
     }
     
     /**
-     * Precondition: roomStack.size() > 0 and roomStack consists of non-null elements
-     * Postcondition: Returns the user to the previous room if possible ("back" command); prints error message otherwise
+     * Walk along the shortest route to the room where the named item was found, or to the room with the
+     * given number, in one command ("goto" command). Every room passed is remembered for "back".
+     * Precondition: None
+     * Postcondition: The player is in the destination if there is a route to it; an error message is printed otherwise.
+     * Special cases: without a key, the route avoids the locked room and the math challenge room; arriving in the
+     * math challenge room starts the challenges as with "go"; the teleport is never used
+     */
+    private void goTo(Command command)
+    {
+        if (!command.hasSecondWord()) {
+            out.println("Go to where?");
+            return;
+        }
+        int destination = findPlace(command.getSecondWord());
+        if (destination == -1) {
+            out.println("There is no such place.");
+            return;
+        }
+        if (destination == currentRoom.getId()) {
+            out.println("You are already there.");
+            return;
+        }
+        boolean hasKey = inventory.hasItemWithCharacteristic(Item.KEY);
+        int[] route = world.getRoutingIndex().findRoute(currentRoom.getId(), destination, hasKey);
+        if (route == null) {
+            out.println(hasKey ? "There is no way to get there from here." : "There is no way to get there from here without a key.");
+            return;
+        }
+        Room from = currentRoom;
+        for (int room : route) {
+            history.push(currentRoom.getId());
+            currentRoom = world.getRoom(room);
+        }
+        out.println(currentRoom.getLongDescription());
+        announceMove(from, false);
+        if (currentRoom == challengeRoom && !hasKey) {
+            startChallenges();
+        }
+    }
+
+    /**
+     * Helper method that returns the id of the room named by the word: the room where the item with that
+     * title was found, or the room with that number. Returns -1 if the word names no room.
+     */
+    private int findPlace(String word)
+    {
+        int item = world.getImage().findItem(word);
+        if (item != -1) {
+            return world.getImage().getItemRoom(item);
+        }
+        try {
+            int room = Integer.parseInt(word);
+            if (room >= 0 && room < world.getRoomCount() && world.getImage().findTeleporter(room) == -1) {
+                return room;
+            }
+        }
+        catch (NumberFormatException exception) {
+            // not a number either
+        }
+        return -1;
+    }
+
+    /**
+     * Precondition: None
+     * Postcondition: Returns the user to the previous room, or n rooms back for "back n", as far as the history
+     * goes ("back" command); prints error message if there is nowhere to go back to
+     * Special cases: only the room the user ends up in can start the math challenges
      */
     private void goBack(Command command)
     {
+    	int steps = 1;
     	if (command.hasSecondWord()) {
-    		System.out.println("You can only go back to the previous room.");
-    	}
-    	else {
-    		if (roomStack.isEmpty()) {
-    			System.out.println("You have to go somewhere first!");
+    		try {
+    			steps = Integer.parseInt(command.getSecondWord());
     		}
-    		else {
-    			int previousRoomIndex = roomStack.size() - 1;
-    			currentRoom = roomStack.get(previousRoomIndex);
-    			roomStack.remove(previousRoomIndex);
-    			System.out.println(currentRoom.getLongDescription());
-    			if (currentRoom == challengeRoom && Room.getAllFoundItemsWithCharacteristic(Item.KEY).size() == 0) {
-    				startChallenges();
-    			}
+    		catch (NumberFormatException exception) {
+    			steps = 0;
+    		}
+    		if (steps <= 0) {
+    			out.println("Go back how many rooms?");
+    			return;
     		}
     	}
+    	if (history.isEmpty()) {
+    		out.println("You have to go somewhere first!");
+    		return;
+    	}
+    	if (steps > history.size()) {
+    		out.println("You can only go back " + history.size() + (history.size() == 1 ? " room." : " rooms."));
+    		steps = history.size();
+    	}
+    	int previousRoom = -1;
+    	for (int i = 0; i < steps; i++) {
+    		previousRoom = history.pop();
+    	}
+    	Room from = currentRoom;
+    	currentRoom = world.getRoom(previousRoom);
+    	out.println(currentRoom.getLongDescription());
+    	announceMove(from, false);
+    	if (currentRoom == challengeRoom && !inventory.hasItemWithCharacteristic(Item.KEY)) {
+    		startChallenges();
+    	}
+    }
+
+    /**
+     * Precondition: None
+     * Postcondition: The last successful get or remove is reversed if the user is still in the room of its item
+     * ("undo" command); prints error message otherwise
+     */
+    private void undo(Command command)
+    {
+    	if (command.hasSecondWord()) {
+    		out.println("You can only undo the last thing you picked up or put back.");
+    		return;
+    	}
+    	if (lastItem == null) {
+    		out.println("There is nothing to undo.");
+    		return;
+    	}
+    	if (!currentRoom.hasItem(lastItem)) {
+    		out.println("You can only undo that in the room where you did it.");
+    		return;
+    	}
+    	if (lastItemTaken) {
+    		inventory.remove(lastItem);
+    		out.println("You put back " + lastItem.getTitle());
+    		announce("has put back " + lastItem.getTitle() + ".");
+    	}
+    	else if (inventory.add(lastItem)) {
+    		out.println("You got " + lastItem.getTitle() + " again");
+    		announce("has picked up " + lastItem.getTitle() + ".");
+    	}
+    	else {
+    		out.println("Someone else has taken " + lastItem.getTitle() + " in the meantime.");
+    	}
+    	lastItem = null;
     }
 
     /** 
@@ -299,7 +795,7 @@ public class Game
     private boolean quit(Command command) 
     {
         if(command.hasSecondWord()) {
-            System.out.println("Quit what?");
+            out.println("Quit what?");
             return false;
         }
         else {
@@ -314,19 +810,15 @@ public class Game
     private void searchRoom(Command command)
     {
     	if (command.hasSecondWord()) {
-    		System.out.println("You can only search the current room.");
+    		out.println("You can only search the current room.");
     	}
     	else {
-    		ArrayList<String> descriptions = currentRoom.listItemDescriptions();
-    		if (descriptions.size() > 0) {
-    			Iterator<String> iterator = descriptions.iterator();
-    			System.out.println("You found the following:");
-    			while (iterator.hasNext()) {
-    				System.out.println(iterator.next());
-    			}
+    		if (currentRoom.hasItemsNotIn(inventory)) {
+    			out.println("You found the following:");
+    			currentRoom.printItemDescriptions(inventory, out);
     		}
     		else {
-    			System.out.println("No items for you to take here!");
+    			out.println("No items for you to take here!");
     		}
     	}
     }
@@ -334,29 +826,43 @@ public class Game
     /**
      * Attempts to collect the item with the specified keyword from the current room ("get" command)
      * Precondition: currentRoom != null
-     * Postcondition: found field of corresponding Item in currentRoom is set to true if it exists; error message printed if not
+     * Postcondition: corresponding Item in currentRoom is added to the inventory if it exists; error message printed if not
      */
     private void getItem(Command command)
     {
     	if (!command.hasSecondWord()) {
-    		System.out.println("Get what?");
+    		out.println("Get what?");
     		return;
     	}
-    	currentRoom.pickUpItem(command.getSecondWord());
+    	Item item = world.getItem(command.getSecondWord());
+    	boolean held = item != null && inventory.contains(item);
+    	currentRoom.pickUpItem(item, inventory, out);
+    	if (item != null && !held && inventory.contains(item)) {
+    		lastItem = item;
+    		lastItemTaken = true;
+    		announce("has picked up " + item.getTitle() + ".");
+    	}
     }
     
     /**
      * Attempts to put the item specified by the user back into the room to which it belongs. ("remove" command)
      * Precondition: currentRoom != null
-     * Postcondition: Item belonging to currentRoom found field set to false if Item belongs to that room; error message printed otherwise
+     * Postcondition: Item belonging to currentRoom is removed from the inventory if Item belongs to that room; error message printed otherwise
      */
     private void removeItem(Command command)
     {
     	if (!command.hasSecondWord()) {
-    		System.out.println("Remove what?");
+    		out.println("Remove what?");
     		return;
     	}
-    	currentRoom.removeItem(command.getSecondWord());
+    	Item item = world.getItem(command.getSecondWord());
+    	boolean held = item != null && inventory.contains(item);
+    	currentRoom.removeItem(item, inventory, out);
+    	if (held && !inventory.contains(item)) {
+    		lastItem = item;
+    		lastItemTaken = false;
+    		announce("has put back " + item.getTitle() + ".");
+    	}
     }
     
     /**
@@ -367,36 +873,33 @@ public class Game
     private boolean throwItem(Command command)
     {
     	if (!command.hasSecondWord()) {
-    		System.out.println("Throw what?");
+    		out.println("Throw what?");
     		return false;
     	}
     	if (!currentRoom.itemIncluded("engine")) {
-    		System.out.println("You are not throwing into the right place. Try a different room (hint: search all the rooms to find your target); .");
+    		out.println("You are not throwing into the right place. Try a different room (hint: search all the rooms to find your target); .");
     		return false;
     	}
-    	ArrayList<String> foundThrowables = Room.getAllFoundItemsWithCharacteristic(Item.THROWABLE);
-    	Iterator<String> iterator = foundThrowables.iterator();
-    	String itemToThrow = "";
-    	while (iterator.hasNext()) {
-    		String itemTitle = iterator.next();
-    		if (command.getSecondWord().equals(itemTitle)) {
-    			itemToThrow = itemTitle;
-    		}
-    	}
-    	if (itemToThrow.equals("")) {
-    		System.out.println("You don't have any throwable item in your inventory matching the item keyword identifier.");
+    	Item thrownItem = inventory.getItemWithCharacteristic(command.getSecondWord(), Item.THROWABLE);
+    	if (thrownItem == null) {
+    		out.println("You don't have any throwable item in your inventory matching the item keyword identifier.");
+    		printHeldItems(Item.THROWABLE, "throw");
     		return false;
     	}
+    	String itemToThrow = thrownItem.getTitle();
     	if (itemToThrow.equals("potassium")) {
-    		System.out.println("You did it! You blew up your own creation! How did you know the most reactive alkaline metal present in this chamber? You won.");
+    		out.println("You did it! You blew up your own creation! How did you know the most reactive alkaline metal present in this chamber? You won.");
+    		metrics.recordWin();
     		return true;
     	}
     	else if (itemToThrow.equals("sodium")) {
-    		System.out.println("You started a fire, but it wasn't enough to disrupt the system. Instead, an alarm of intrusion was triggered, and you have been locked in a cage. You will slowly but surely die here, so no need to continue playing. You lost.");
+    		out.println("You started a fire, but it wasn't enough to disrupt the system. Instead, an alarm of intrusion was triggered, and you have been locked in a cage. You will slowly but surely die here, so no need to continue playing. You lost.");
+    		metrics.recordLoss();
     		return true;
     	}
     	else if (itemToThrow.equals("bomb")) {
-    		System.out.println("You fell for the trap! You blew up your contraption, but now you got blown up as well. You lost.");
+    		out.println("You fell for the trap! You blew up your contraption, but now you got blown up as well. You lost.");
+    		metrics.recordLoss();
     		return true;
     	}
     	return false;
@@ -410,103 +913,152 @@ public class Game
     private boolean takeItem(Command command)
     {
     	if (!command.hasSecondWord()) {
-    		System.out.println("Take what?");
+    		out.println("Take what?");
     		return false;
     	}
-    	ArrayList<String> foundMedicines = Room.getAllFoundItemsWithCharacteristic(Item.MEDICINE);
-    	Iterator<String> iterator = foundMedicines.iterator();
-    	String itemToTake = "";
-    	while (iterator.hasNext()) {
-    		String itemTitle = iterator.next();
-    		if (command.getSecondWord().equals(itemTitle)) {
-    			itemToTake = itemTitle;
-    		}
-    	}
-    	if (itemToTake.equals("")) {
-    		System.out.println("You don't have any medicine item in your inventory matching the item keyword identifier.");
+    	Item takenItem = inventory.getItemWithCharacteristic(command.getSecondWord(), Item.MEDICINE);
+    	if (takenItem == null) {
+    		out.println("You don't have any medicine item in your inventory matching the item keyword identifier.");
+    		printHeldItems(Item.MEDICINE, "take");
     		return false;
     	}
+    	String itemToTake = takenItem.getTitle();
     	if (itemToTake.equals("bluepill")) {
-    		System.out.println("Seriously?  You would rather live in a fake reality? Now your senses are tethered to an imaginary world created by your computer, and there is no turning back. Therefore, there is no point in continuing, because you won't reach the objective. Why would you take unsuspecting medicine? You lost.");
+    		out.println("Seriously?  You would rather live in a fake reality? Now your senses are tethered to an imaginary world created by your computer, and there is no turning back. Therefore, there is no point in continuing, because you won't reach the objective. Why would you take unsuspecting medicine? You lost.");
+    		metrics.recordLoss();
     		return true;
     	}
     	else if (itemToTake.equals("purplepill")) {
-    		System.out.println("You just took a poison pill. You lost.");
+    		out.println("You just took a poison pill. You lost.");
+    		metrics.recordLoss();
     		return true;
     	}
     	return false;
     }
     
     /**
-     * Helper method to prompt the user and return whether the answer to the challenge was correct.
-     * Precondition: parser != null
-     * Postcondition: Returns whether int solution is correct by the user with the answer argument
+     * Helper method that tells the player which of the items they hold have the characteristic, and so can be
+     * used with the command word given.
+     */
+    private void printHeldItems(int characteristic, String commandWord)
+    {
+    	int[] ids = inventory.getItemsWithCharacteristic(characteristic);
+    	if (ids.length == 0) {
+    		out.println("You have nothing you can " + commandWord + ".");
+    		return;
+    	}
+    	StringBuilder titles = new StringBuilder();
+    	for (int id : ids) {
+    		titles.append(titles.length() == 0 ? "" : ", ").append(world.getItem(id).getTitle());
+    	}
+    	out.println("You can " + commandWord + ": " + titles + ".");
+    }
+
+    /**
+     * Helper method that checks the player's answer to the math challenge posed. A correct answer moves on to
+     * the next challenge; any other answer gets another form of the same challenge.
+     * Precondition: challenge != 0
+     * Postcondition: The next challenge (or another form of this one) is posed; the challenges are over if the
+     * last one was answered correctly
      */
-    private boolean testAnswer(int answer)
+    private void answerChallenge(String line)
     {
-    	String line = parser.getLine();
     	try {
     		int response = Integer.parseInt(line);
-    		if (response == answer) {
-    			System.out.println("Perfect!");
-    			return true;
+    		if (response == challengeAnswer(false)) {
+    			out.println("Perfect!");
+    			if (challenge == CHALLENGES) {
+    				challenge = 0;
+    				out.println("Now you are in this room, and you can take anything available to take that may or may not be in here. Whatever you may need to win this game may also exempt you from doing more challenges when you enter this room again.");
+    				metrics.recordChallengesSolved(System.nanoTime() - challengeStart);
+    				return;
+    			}
+    			challenge++;
     		}
     		else {
-    			System.out.println("Incorrect. You will get another form of the same problem to try to redeem yourself, so make it count this time.");
-    			return false;
+    			out.println("Incorrect. You will get another form of the same problem to try to redeem yourself, so make it count this time.");
     		}
     	}
     	catch (NumberFormatException exception) {
-    		System.out.println("All answers are integers. That is not what you entered. Try this form of the problem instead.");
-    		return false;
+    		out.println("All answers are integers. That is not what you entered. Try this form of the problem instead.");
     	}
+    	poseChallenge();
     }
     
     /**
-     * Helper method to allow the user to complete math challenges. This poses the problems.
+     * Helper method to allow the user to complete math challenges. This poses the first problem; the answers
+     * arrive as the following lines of input (see answerChallenge).
      * Another form of the problem will be given until the user answers it correctly.
-     * Precondition: parser != null
-     * Postcondition: Math problems will be generated; each problem will regenerate another form until user gets it correct; user is free when all challenges are solved
+     * Precondition: None
+     * Postcondition: The first math problem is posed; the user is free when all challenges are solved
      */
     private void startChallenges()
     {
-    	boolean correct;
-    	System.out.println("You are trapped in the entrance until you correctly solve ALL of the challenges.");
-    	do {
-    		int angle = (int) (Math.random() * (89 - 46 + 1) + 46);
-    		int answer = 90 - angle;
-    		System.out.println("You are in a snowball fight with Mr. Haskins that he picked with you. He thinks he is so brilliant and well-prepared and is licking his chops, but there is one thing you have thought of that will definitely catch him off-guard. You throw a snowball at him at a high angle of " + angle + " degrees. While he is looking up to dodge that snowball, after waiting a certain amount of time, you throw another snowball at a low angle. As a result, both snowballs drill him at the same time, and there is nothing he can do. What low angle should you throw your second snowball, in degrees?");
-    		correct = testAnswer(answer);
-    	} while (!correct);
-    	do {
-    		int coefficient = (int) (Math.random() * (16 - 2 + 1) + 2);
-    		int exponent = (int) (Math.random() * (5 - 2 + 1) + 2);
-    		int answer = coefficient * exponent;
-    		System.out.println("If f(x) = " + coefficient + "x^" + exponent + " then what is the value of f'(1)?");
-    		correct = testAnswer(answer);
-    	} while (!correct);
-    	do {
-    		int acceleration = 2 * (int) (Math.random() * (5 - 1 + 1) + 1);
-    		int initialVelocity = (int) (Math.random() * (8 - 2 + 1) + 2);
-    		int time = (int) (Math.random() * (4 - 2 + 1) + 2);
-    		int answer = (acceleration/2) * (time * time) + initialVelocity * time;
-    		System.out.println("Your car is moving at " + initialVelocity + " m/s, and you then accelerate it at " + acceleration + " m/s^2. How far in m will it have traveled after " + time + " s?");
-    		correct = testAnswer(answer);
-    	} while (!correct);
-    	do {
-    		int initialVelocity = 10 * (int) (Math.random() * (5 - 1 + 1) + 1);
-    		int time = initialVelocity / 10;
-    		int answer = -5 * (time * time) + initialVelocity * time;
-    		System.out.println("A ball is thrown upward at " + initialVelocity + " m/s. What is its greatest height in m that it reaches neglecting air resistance? The acceleration due to gravity should be taken to be rounded to the nearest integer.");
-    		correct = testAnswer(answer);
-    	} while (!correct);
-    	do {
-    		int coefficient = (int) (Math.random() * (5 - 2 + 1) + 2);
-    		int exponent = (int) (Math.random() * (8 - 3 + 1) + 3);
-    		int answer = coefficient * exponent;
-    		System.out.println("If f'(x) = " + coefficient + "/x and f(1) = 0, then what is the value of f(e^" + exponent + ")?");
-    		correct = testAnswer(answer);
-    	} while (!correct);
-    	System.out.println("Now you are in this room, and you can take anything available to take that may or may not be in here. Whatever you may need to win this game may also exempt you from doing more challenges when you enter this room again.");
+    	challengeStart = System.nanoTime();
+    	metrics.recordChallengesStarted();
+    	out.println("You are trapped in the entrance until you correctly solve ALL of the challenges.");
+    	challenge = 1;
+    	poseChallenge();
+    }
+
+    /**
+     * Helper method that poses a new form of the current challenge.
+     */
+    private void poseChallenge()
+    {
+    	challengeSeed = random.nextLong();
+    	challengeAnswer(true);
+    }
+
+    /**
+     * Helper method that works out the current form of the current challenge from challengeSeed.
+     * @param print Whether to print the problem.
+     * @return The correct answer.
+     */
+    private int challengeAnswer(boolean print)
+    {
+    	SplittableRandom numbers = new SplittableRandom(challengeSeed);
+    	switch (challenge) {
+    		case 1: {
+    			int angle = numbers.nextInt(89 - 46 + 1) + 46;
+    			if (print) {
+    				out.println("You are in a snowball fight with Mr. Haskins that he picked with you. He thinks he is so brilliant and well-prepared and is licking his chops, but there is one thing you have thought of that will definitely catch him off-guard. You throw a snowball at him at a high angle of " + angle + " degrees. While he is looking up to dodge that snowball, after waiting a certain amount of time, you throw another snowball at a low angle. As a result, both snowballs drill him at the same time, and there is nothing he can do. What low angle should you throw your second snowball, in degrees?");
+    			}
+    			return 90 - angle;
+    		}
+    		case 2: {
+    			int coefficient = numbers.nextInt(16 - 2 + 1) + 2;
+    			int exponent = numbers.nextInt(5 - 2 + 1) + 2;
+    			if (print) {
+    				out.println("If f(x) = " + coefficient + "x^" + exponent + " then what is the value of f'(1)?");
+    			}
+    			return coefficient * exponent;
+    		}
+    		case 3: {
+    			int acceleration = 2 * (numbers.nextInt(5 - 1 + 1) + 1);
+    			int initialVelocity = numbers.nextInt(8 - 2 + 1) + 2;
+    			int time = numbers.nextInt(4 - 2 + 1) + 2;
+    			if (print) {
+    				out.println("Your car is moving at " + initialVelocity + " m/s, and you then accelerate it at " + acceleration + " m/s^2. How far in m will it have traveled after " + time + " s?");
+    			}
+    			return (acceleration/2) * (time * time) + initialVelocity * time;
+    		}
+    		case 4: {
+    			int initialVelocity = 10 * (numbers.nextInt(5 - 1 + 1) + 1);
+    			int time = initialVelocity / 10;
+    			if (print) {
+    				out.println("A ball is thrown upward at " + initialVelocity + " m/s. What is its greatest height in m that it reaches neglecting air resistance? The acceleration due to gravity should be taken to be rounded to the nearest integer.");
+    			}
+    			return -5 * (time * time) + initialVelocity * time;
+    		}
+    		default: {
+    			int coefficient = numbers.nextInt(5 - 2 + 1) + 2;
+    			int exponent = numbers.nextInt(8 - 3 + 1) + 3;
+    			if (print) {
+    				out.println("If f'(x) = " + coefficient + "/x and f(1) = 0, then what is the value of f(e^" + exponent + ")?");
+    			}
+    			return coefficient * exponent;
+    		}
+    	}
     }
 }
@@ -0,0 +1,245 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * GameMetrics class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * Counts what the games in the program are doing: the commands carried out and how long each took, the
+ * commands not understood, teleports, wins, losses and the math challenges posed. All games share the
+ * one GameMetrics returned by get(), which is registered with the platform MBean server as
+ * "madniverse:type=Game"; every command word gets its own CommandMetrics, registered as
+ * "madniverse:type=Command,name=<word>". A JMX console such as jconsole shows them while the program runs.
+ *
+ * Every counter is a LongAdder and every duration goes into a LatencyHistogram, so recording never
+ * takes a lock and games on different threads seldom touch the same memory.
+ * The duration of a command includes everything it does. The answers to the math challenges are not
+ * commands; the time from the first question until all were solved is recorded separately.
+ *
+ */
+
+public class GameMetrics implements GameMetricsMBean
+{
+	private static final String DOMAIN = "madniverse";
+	private static GameMetrics instance;
+	private static GameMetrics discarded;
+
+	private LongAdder gamesStarted;
+	private LongAdder unknownCommands;
+	private LongAdder teleports;
+	private LongAdder wins;
+	private LongAdder losses;
+	private LongAdder challengesStarted;
+	private LatencyHistogram challenges;    // time taken to solve all the challenges
+	private ConcurrentHashMap<String, CommandMetrics> commands;
+	private boolean registered;             // whether these metrics are shown through JMX
+
+	private GameMetrics()
+	{
+		gamesStarted = new LongAdder();
+		unknownCommands = new LongAdder();
+		teleports = new LongAdder();
+		wins = new LongAdder();
+		losses = new LongAdder();
+		challengesStarted = new LongAdder();
+		challenges = new LatencyHistogram();
+		commands = new ConcurrentHashMap<String, CommandMetrics>();
+	}
+
+	/**
+	 * Return the metrics of all games. They are created and registered with JMX the first time they are needed.
+	 * Precondition: None
+	 * Postcondition: Returns the same GameMetrics on every call
+	 */
+	public static synchronized GameMetrics get()
+	{
+		if (instance == null) {
+			instance = new GameMetrics();
+			instance.registered = true;
+			register(instance, DOMAIN + ":type=Game");
+		}
+		return instance;
+	}
+
+	/**
+	 * Return metrics that nobody reads, for what a game does that should not be counted, such as carrying
+	 * out the commands of a recovered game again.
+	 * Precondition: None
+	 * Postcondition: Returns the same GameMetrics on every call, which is not get() and is not registered with JMX
+	 */
+	public static synchronized GameMetrics discarded()
+	{
+		if (discarded == null) {
+			discarded = new GameMetrics();
+		}
+		return discarded;
+	}
+
+	/**
+	 * Precondition: word != null
+	 * Postcondition: Returns the metrics of the command word, creating and registering them the first time
+	 */
+	public CommandMetrics forCommand(String word)
+	{
+		CommandMetrics metrics = commands.get(word);
+		if (metrics == null) {
+			metrics = new CommandMetrics(word);
+			CommandMetrics existing = commands.putIfAbsent(word, metrics);
+			if (existing != null) {
+				return existing;
+			}
+			if (registered) {
+				register(metrics, DOMAIN + ":type=Command,name=" + ObjectName.quote(word));
+			}
+		}
+		return metrics;
+	}
+
+	public void recordGameStarted()
+	{
+		gamesStarted.increment();
+	}
+
+	public void recordUnknownCommand()
+	{
+		unknownCommands.increment();
+	}
+
+	public void recordTeleport()
+	{
+		teleports.increment();
+	}
+
+	public void recordWin()
+	{
+		wins.increment();
+	}
+
+	public void recordLoss()
+	{
+		losses.increment();
+	}
+
+	public void recordChallengesStarted()
+	{
+		challengesStarted.increment();
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: One more run of the math challenges, from the first question until all were solved, is counted
+	 */
+	public void recordChallengesSolved(long nanos)
+	{
+		challenges.record(nanos);
+	}
+
+	public long getGamesStarted()
+	{
+		return gamesStarted.sum();
+	}
+
+	/**
+	 * @return The number of commands carried out, not counting those that were not understood.
+	 */
+	public long getCommands()
+	{
+		long count = 0;
+		for (CommandMetrics metrics : commands.values()) {
+			count += metrics.getCount();
+		}
+		return count;
+	}
+
+	public long getUnknownCommands()
+	{
+		return unknownCommands.sum();
+	}
+
+	public long getTeleports()
+	{
+		return teleports.sum();
+	}
+
+	public long getWins()
+	{
+		return wins.sum();
+	}
+
+	public long getLosses()
+	{
+		return losses.sum();
+	}
+
+	public long getChallengesStarted()
+	{
+		return challengesStarted.sum();
+	}
+
+	public long getChallengesSolved()
+	{
+		return challenges.getCount();
+	}
+
+	public long getChallengeP50Nanos()
+	{
+		return challenges.getPercentile(50);
+	}
+
+	public long getChallengeMaxNanos()
+	{
+		return challenges.getMax();
+	}
+
+	public String[] getCommandSummaries()
+	{
+		ArrayList<CommandMetrics> used = new ArrayList<CommandMetrics>();
+		for (CommandMetrics metrics : commands.values()) {
+			if (metrics.getCount() > 0) {
+				used.add(metrics);
+			}
+		}
+		used.sort(Comparator.comparingLong(CommandMetrics::getP99Nanos).reversed());
+		String[] summaries = new String[used.size()];
+		for (int i = 0; i < summaries.length; i++) {
+			summaries[i] = used.get(i).toString();
+		}
+		return summaries;
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Every counter, including those of every command word, starts again from 0
+	 */
+	public void reset()
+	{
+		gamesStarted.reset();
+		unknownCommands.reset();
+		teleports.reset();
+		wins.reset();
+		losses.reset();
+		challengesStarted.reset();
+		challenges.reset();
+		for (CommandMetrics metrics : commands.values()) {
+			metrics.reset();
+		}
+	}
+
+	/**
+	 * Helper method that registers an MBean with the platform MBean server. Metrics are still counted
+	 * if this fails, for instance because the name is taken by another copy of the classes.
+	 */
+	private static void register(Object mbean, String name)
+	{
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, new ObjectName(name));
+		}
+		catch (JMException exception) {
+			System.err.println("Could not register " + name + " with JMX: " + exception);
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/**
+ * GameMetricsMBean interface.
+ * This is part of the "Center of Madniverse" adventure game.
+ * The management interface of GameMetrics, as seen through JMX. Durations are in nanoseconds.
+ *
+ */
+
+public interface GameMetricsMBean
+{
+	long getGamesStarted();
+
+	long getCommands();
+
+	long getUnknownCommands();
+
+	long getTeleports();
+
+	long getWins();
+
+	long getLosses();
+
+	long getChallengesStarted();
+
+	long getChallengesSolved();
+
+	long getChallengeP50Nanos();
+
+	long getChallengeMaxNanos();
+
+	/**
+	 * @return One line for every command word carried out so far, the slowest at the 99th percentile first.
+	 */
+	String[] getCommandSummaries();
+
+	void reset();
+}
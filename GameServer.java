@@ -0,0 +1,736 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * GameServer class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * Hosts many independent Game sessions in one program. Players connect to a loopback socket and
+ * exchange plain text lines: every line sent is read as a command, and the game's messages are sent back.
+ *
+ * All connections are served by the one thread that calls serve, which waits on a Selector for any of them
+ * to send a line, but carries out no commands itself: the complete lines of a connection are handed to
+ * its Game (see Game.handleLine) on a worker, one at a time and in the order they were sent, while the
+ * lines of other connections are carried out on other workers meanwhile. A slow command therefore holds
+ * up only the player who sent it. A player who is thinking, or working on the math challenges, costs no
+ * thread at all: only the Game, the connection and two small buffers. A response that the connection
+ * cannot take at once is kept until it can; while much of it waits, no more of that player's lines are
+ * carried out, and once a few are waiting nothing more is read from them.
+ * The players either each have a world of their own or all share one (see SharedItems), in which case
+ * the items of a player who disconnects are put back. Players sharing a world see each other in the
+ * rooms (see RoomPresence): whatever happens around a player is sent to them as soon as the server is
+ * done with the line in hand, without waiting for them to type, unless their connection is still
+ * taking an earlier response. What does not fit in their queue meanwhile is dropped for them alone.
+ * A server can also be one node of a world divided among several programs (see ClusterNode): it is then
+ * the gateway of the players connected to it, and passes their lines on to whichever node has their game.
+ * None of such a player's lines are carried out until the node's response to the previous one has arrived.
+ * A server of independent games can journal them in a SessionStore: a player then first names their session,
+ * and carries on with its game if they left it unfinished. Shared worlds and cluster nodes are not journaled,
+ * as a player's game there depends on the other players and on the other nodes.
+ *
+ */
+
+public class GameServer
+{
+	public static final int DEFAULT_PORT = 4242;
+	private static final int BACKLOG = 1024;        // connections waiting to be accepted
+	private static final int BUFFER_BYTES = 512;
+	private static final int MAX_LINE = 4096;       // longer lines close the connection
+	private static final int MAX_QUEUED_LINES = 16; // lines received and not yet carried out before reading stops
+	private static final int MAX_UNSENT = 16384;    // bytes of response not yet written before lines stop being carried out
+
+	private World world;
+	private ServerSocketChannel serverChannel;
+	private Selector selector;
+	private ExecutorService workers;    // carries out the lines
+	private SharedItems sharedItems;    // null if every session has the world to itself
+	private RoomPresence presence;      // null if every session has the world to itself
+	private ConcurrentLinkedQueue<Session> ready;   // sessions with a response to write, or whose worker has stopped
+	private ClusterNode cluster;        // null unless the world is divided among several nodes
+	private ConcurrentHashMap<Long, Session> sessions;  // by session id, the sessions of a cluster node
+	private SessionStore store;         // keeps the games for their players to carry on with; null if not journaled
+	private Set<String> playing;        // names of the journaled sessions being played
+
+	/**
+	 * Precondition: 0 <= port <= 65535 && world != null
+	 * Postcondition: Server listens on the loopback address at the given port (any free port if 0); every session plays world
+	 */
+	public GameServer(int port, World world) throws IOException
+	{
+		this(port, world, false);
+	}
+
+	/**
+	 * Precondition: 0 <= port <= 65535 && world != null
+	 * Postcondition: Server listens on the loopback address at the given port (any free port if 0); every session plays
+	 *                world, all in one shared world if shared is true
+	 */
+	public GameServer(int port, World world, boolean shared) throws IOException
+	{
+		this.world = world;
+		if (shared) {
+			sharedItems = new SharedItems(world);
+			presence = new RoomPresence(world);
+		}
+		workers = newWorkers();
+		ready = new ConcurrentLinkedQueue<>();
+		sessions = new ConcurrentHashMap<>();
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	/**
+	 * Precondition: 0 <= port <= 65535 && cluster != null && world is the world of cluster
+	 * Postcondition: Server listens on the loopback address at the given port as the gateway of its players
+	 *                to the nodes of cluster, playing itself the games in the rooms of its own node
+	 */
+	public GameServer(int port, World world, ClusterNode cluster) throws IOException
+	{
+		this(port, world, false);
+		this.cluster = cluster;
+		cluster.setListener(new ClusterNode.Listener() {
+			public void replied(ClusterNode.Reply reply)
+			{
+				Session session = sessions.get(reply.session);
+				if (session != null) {      // else the player has disconnected meanwhile
+					session.receive(reply);
+				}
+			}
+
+			public void linkFailed(int node)
+			{
+				for (Session session : sessions.values()) {
+					session.nodeFailed(node);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Journal the games in the given store. Every player is first asked for the name of their session, and
+	 * carries on with its game if it is unfinished; a player who gives no name is given a new session.
+	 * Precondition: The server plays independent games, not a shared world or a cluster node, and serve has not been called
+	 * Postcondition: The games of all later connections are journaled in store
+	 */
+	public void setSessionStore(SessionStore store)
+	{
+		if (sharedItems != null || cluster != null) {
+			throw new IllegalStateException("Only independent games can be journaled");
+		}
+		this.store = store;
+		playing = ConcurrentHashMap.newKeySet();
+	}
+
+	/**
+	 * @return The port on which the server accepts connections.
+	 */
+	public int getPort()
+	{
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Accepts connections and plays a Game session for each one until the server is closed.
+	 * Precondition: None
+	 * Postcondition: Returns once close() has been called and every session has ended
+	 */
+	public void serve() throws IOException
+	{
+		while (serverChannel.isOpen() || hasSessions()) {
+			selector.select();
+			for (SelectionKey key : selector.selectedKeys()) {
+				if (!key.isValid()) {
+					continue;
+				}
+				if (key.isAcceptable()) {
+					accept();
+					continue;
+				}
+				Session session = (Session) key.attachment();
+				try {
+					if (key.isWritable()) {
+						session.flush();
+					}
+					if (key.isValid() && key.isReadable()) {
+						session.read();
+					}
+				}
+				catch (IOException | RuntimeException exception) {
+					session.close();    // the player disconnected, or the game failed; only this session ends
+				}
+			}
+			selector.selectedKeys().clear();
+			Session session;
+			while ((session = ready.poll()) != null) {
+				try {
+					session.flush();
+				}
+				catch (IOException | RuntimeException exception) {
+					session.close();
+				}
+			}
+		}
+		selector.close();
+		workers.shutdown();
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: No new connections are accepted; sessions already running are allowed to finish
+	 */
+	public void close() throws IOException
+	{
+		serverChannel.close();
+		selector.wakeup();
+	}
+
+	/**
+	 * @return true if any connection is still open.
+	 */
+	private boolean hasSessions()
+	{
+		for (SelectionKey key : selector.keys()) {
+			if (key.isValid() && key.attachment() != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Helper method that returns the executor the lines are carried out on: a virtual thread per task where
+	 * the Java runtime has them, otherwise a pool of daemon threads that grows with the sessions that have
+	 * work in hand, so that slow commands never keep the others waiting for a thread.
+	 */
+	private static ExecutorService newWorkers()
+	{
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException exception) {
+			return Executors.newCachedThreadPool(task -> {
+				Thread thread = new Thread(task, "game-worker");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Helper method that accepts a waiting connection, if there is one, and has its Game started.
+	 */
+	private void accept() throws IOException
+	{
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		Session session = new Session(channel);
+		session.key = channel.register(selector, SelectionKey.OP_READ, session);
+		session.schedule();
+	}
+
+	/**
+	 * One connection and its Game. The connection is read and written by the serving thread alone, which
+	 * splits what it reads into lines and queues them. The Game is played by one worker at a time, which
+	 * starts it, carries out the queued lines in order, and sends the player the events queued for them;
+	 * its messages are passed to the session as its OutputSink, once per turn, and kept until the serving
+	 * thread has written them. The fields marked as the worker's are only touched by the worker, or by
+	 * another thread holding the session's lock while no worker is running.
+	 */
+	private class Session implements OutputSink
+	{
+		private SocketChannel channel;
+		private SelectionKey key;
+		private CharsetDecoder decoder;
+		private CharsetEncoder encoder;
+		private ByteBuffer received;    // bytes read but not yet decoded
+		private CharBuffer chars;       // decoded characters
+		private StringBuilder line;     // the line being received
+
+		// Guarded by the session's lock
+		private ArrayDeque<String> lines;   // lines received and not yet carried out
+		private ByteBuffer unsent;          // response not yet written, ready for more
+		private boolean running;            // a worker is playing the game
+		private boolean started;            // the game has been started
+		private boolean eventsNotified;     // events have been queued for the player
+		private boolean posted;             // the session is waiting in ready
+		private boolean broken;             // the game failed; close the connection
+		private boolean closed;             // the connection is closed
+		private boolean ended;              // the player has sent all they will send
+		private ArrayDeque<ClusterNode.Reply> replies;  // replies of other nodes not yet taken
+		private ArrayDeque<Integer> failedNodes;        // nodes that could no longer be reached
+
+		// The worker's
+		private Game game;
+		private boolean finished;       // the game has ended; close once the response is written
+		private boolean cleanedUp;      // the game has been left after the connection closed
+		private long id;                // unique among the sessions of all nodes; cluster nodes only
+		private String name;            // of the journaled session; null until the player has named it
+		private int owner;              // the node playing the game; cluster nodes only
+		private int lineNumber;         // the number of the next line the player sends
+		private boolean waiting;        // a line has been passed to the owner, whose response has not arrived
+
+		Session(SocketChannel channel)
+		{
+			this.channel = channel;
+			decoder = StandardCharsets.UTF_8.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			encoder = StandardCharsets.UTF_8.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			received = ByteBuffer.allocate(BUFFER_BYTES);
+			chars = CharBuffer.allocate(BUFFER_BYTES);
+			line = new StringBuilder();
+			lines = new ArrayDeque<>();
+			unsent = ByteBuffer.allocate(BUFFER_BYTES);
+			replies = new ArrayDeque<>();
+			failedNodes = new ArrayDeque<>();
+		}
+
+		/**
+		 * Read what the player sent and queue every complete line. Once the player has sent all they will send,
+		 * the last line is queued even without a newline, and the session closes when every line has been
+		 * carried out and the response written.
+		 */
+		void read() throws IOException
+		{
+			if (channel.read(received) == -1) {
+				synchronized (this) {
+					ended = true;
+				}
+			}
+			flush();
+		}
+
+		/**
+		 * Write as much of the response as the connection takes now, queue the complete lines received, and
+		 * set the worker going if it has something to do. Reading stops while the queue is full, and the rest
+		 * of the response is written when the connection is ready for it. Called by the serving thread.
+		 */
+		synchronized void flush() throws IOException
+		{
+			posted = false;
+			if (closed) {
+				return;
+			}
+			if (unsent.position() > 0) {
+				unsent.flip();
+				channel.write(unsent);
+				unsent.compact();
+			}
+			queueLines();
+			if (broken || (!running && unsent.position() == 0 && (finished || isCarriedOut()))) {
+				close();
+				return;
+			}
+			int interest = unsent.position() > 0 ? SelectionKey.OP_WRITE : 0;
+			if (!finished && !ended && lines.size() < MAX_QUEUED_LINES) {
+				interest |= SelectionKey.OP_READ;
+			}
+			key.interestOps(interest);
+			schedule();
+		}
+
+		/**
+		 * Move the complete lines among the bytes received to the queue, until it is full.
+		 */
+		private void queueLines() throws IOException
+		{
+			received.flip();
+			decoder.decode(received, chars, ended);
+			received.compact();
+			chars.flip();
+			while (chars.hasRemaining() && lines.size() < MAX_QUEUED_LINES) {
+				char c = chars.get();
+				if (c != '\n') {
+					if (line.length() == MAX_LINE) {
+						throw new IOException("Line too long");
+					}
+					line.append(c);
+					continue;
+				}
+				if (line.length() > 0 && line.charAt(line.length() - 1) == '\r') {
+					line.setLength(line.length() - 1);
+				}
+				lines.add(line.toString());
+				line.setLength(0);
+			}
+			if (ended && !chars.hasRemaining() && received.position() == 0 && line.length() > 0 && lines.size() < MAX_QUEUED_LINES) {
+				lines.add(line.toString());
+				line.setLength(0);
+			}
+			chars.compact();
+		}
+
+		/**
+		 * Helper method that returns whether the player has sent all they will send and every line of it has
+		 * been carried out.
+		 */
+		private boolean isCarriedOut()
+		{
+			return ended && started && !waiting && lines.isEmpty() && replies.isEmpty()
+					&& received.position() == 0 && chars.position() == 0 && line.length() == 0;
+		}
+
+		/**
+		 * Set a worker going if none is running and there is something to do.
+		 */
+		synchronized void schedule()
+		{
+			if (!running && hasWork()) {
+				running = true;
+				workers.execute(this::work);
+			}
+		}
+
+		/**
+		 * Helper method that returns whether the worker has something to do. A line is only carried out while
+		 * the response to the previous ones has mostly been written, and events are only sent once it all has.
+		 */
+		private boolean hasWork()
+		{
+			if (closed) {
+				return !cleanedUp;
+			}
+			if (broken) {
+				return false;
+			}
+			if (!started || !replies.isEmpty() || !failedNodes.isEmpty()) {
+				return true;
+			}
+			if (finished || waiting || unsent.position() >= MAX_UNSENT) {
+				return false;
+			}
+			return !lines.isEmpty() || (eventsNotified && unsent.position() == 0);
+		}
+
+		/**
+		 * Play the game for as long as there is something to do, one step at a time, handing each response
+		 * to the serving thread as soon as it is ready. Run by the worker.
+		 */
+		private void work()
+		{
+			while (true) {
+				String text = null;
+				ClusterNode.Reply reply = null;
+				Integer failedNode = null;
+				boolean cleanUp = false;
+				boolean deliver = false;
+				synchronized (this) {
+					if (!hasWork()) {
+						running = false;
+						post();
+						return;
+					}
+					if (closed) {
+						cleanUp = true;
+					}
+					else if (started && !replies.isEmpty()) {
+						reply = replies.poll();
+					}
+					else if (started && !failedNodes.isEmpty()) {
+						failedNode = failedNodes.poll();
+					}
+					else if (started && !lines.isEmpty() && !finished && !waiting && unsent.position() < MAX_UNSENT) {
+						text = lines.poll();
+					}
+					else if (started) {
+						eventsNotified = false;
+						deliver = true;
+					}
+				}
+				try {
+					if (cleanUp) {
+						cleanUp();
+					}
+					else if (!started) {
+						start();
+					}
+					else if (reply != null) {
+						takeReply(reply);
+					}
+					else if (failedNode != null) {
+						if (game == null && !finished && owner == failedNode) {
+							fail("The part of the world you were in is no longer reachable.");
+						}
+					}
+					else if (text != null) {
+						finished = carryOut(text);
+					}
+					else if (deliver && game != null && !finished) {
+						game.deliverEvents();
+					}
+				}
+				catch (IOException | RuntimeException exception) {
+					synchronized (this) {
+						broken = true;  // the game failed; only this session ends
+					}
+				}
+				post();
+			}
+		}
+
+		/**
+		 * Hand the session to the serving thread, to write the response and see what to do next.
+		 */
+		private synchronized void post()
+		{
+			if (!posted && !closed) {
+				posted = true;
+				ready.add(this);
+				selector.wakeup();
+			}
+		}
+
+		private void start() throws IOException
+		{
+			if (store != null) {
+				askName(new Output(this), "Give the name of your session to carry on with it, or nothing to start a new one.");
+			}
+			else {
+				game = new Game(world, InputStream.nullInputStream(), new Output(this));
+				if (sharedItems != null) {
+					game.shareItems(sharedItems);
+					game.shareRooms(presence, this::notifyEvents);
+				}
+				game.start();
+				if (cluster != null) {
+					id = cluster.newSessionId();
+					owner = cluster.getIndex();
+					sessions.put(id, this);
+					handOffIfMoved();
+				}
+			}
+			synchronized (this) {
+				started = true;
+			}
+		}
+
+		/**
+		 * Open the journaled session the player named, or a new one if they named none, and start its game where
+		 * it was left. A name that cannot be used is asked for again.
+		 */
+		private void openSession(String requested) throws IOException
+		{
+			Output out = new Output(this);
+			String chosen = requested.isEmpty() ? UUID.randomUUID().toString() : requested;
+			if (!SessionStore.isValidSessionId(chosen)) {
+				askName(out, "A session name is made of letters, digits, - and _ only.");
+				return;
+			}
+			if (!playing.add(chosen)) {
+				askName(out, "Somebody is playing that session now.");
+				return;
+			}
+			try {
+				game = store.open(chosen, world, InputStream.nullInputStream(), out);
+			}
+			catch (IOException exception) {
+				playing.remove(chosen);     // its journal is damaged or belongs to another world
+				askName(out, "That session cannot be carried on here.");
+				return;
+			}
+			name = chosen;
+			out.println("Your session is " + name + ". Give this name when you connect again to carry on where you left off.");
+			game.start();
+		}
+
+		/**
+		 * Send the player the message and prompt them for the name of their session.
+		 */
+		private void askName(Output out, String message)
+		{
+			out.println(message);
+			out.print("Session> ");
+			out.flush();
+		}
+
+		/**
+		 * Carry out a line the player sent, here if the game is played here, or by passing it to the node that has
+		 * the game; no more lines are carried out until the response has arrived.
+		 * @return true if the line ended the game.
+		 */
+		private boolean carryOut(String text) throws IOException
+		{
+			int number = lineNumber++;
+			if (store != null && name == null) {
+				openSession(text.trim());
+				return false;
+			}
+			if (game == null) {
+				waiting = true;
+				cluster.sendLine(owner, id, number, text);
+				return false;
+			}
+			if (game.handleLine(text)) {
+				return true;
+			}
+			handOffIfMoved();
+			return false;
+		}
+
+		/**
+		 * Hand the game off to the node owning the player's room, if this node does not.
+		 */
+		private void handOffIfMoved() throws IOException
+		{
+			if (cluster != null && cluster.isRemote(game.getCurrentRoom())) {
+				int node = cluster.getPartition().getNode(game.getCurrentRoom().getId());
+				cluster.sendHandoff(node, id, lineNumber, game.saveState());
+				game = null;
+				owner = node;
+			}
+		}
+
+		/**
+		 * Queue the reply of the node that carried out the player's line. Called by the thread reading that node.
+		 */
+		synchronized void receive(ClusterNode.Reply reply)
+		{
+			replies.add(reply);
+			schedule();
+		}
+
+		/**
+		 * Tell the session that a node can no longer be reached. Called by the thread that was reading that node.
+		 */
+		synchronized void nodeFailed(int node)
+		{
+			failedNodes.add(node);
+			schedule();
+		}
+
+		/**
+		 * Send the player the response of the node that carried out their line, and take the game back or hand
+		 * it on if it has moved.
+		 */
+		private void takeReply(ClusterNode.Reply reply) throws IOException
+		{
+			if (!waiting || reply.line != lineNumber - 1) {
+				throw new IOException("Reply to line " + reply.line + " of session " + id + " out of turn");
+			}
+			waiting = false;
+			owner = reply.owner;
+			if (reply.state != null) {
+				if (owner == cluster.getIndex()) {
+					game = new Game(world, InputStream.nullInputStream(), new Output(this));
+					game.restoreState(reply.state);
+				}
+				else {
+					cluster.sendHandoff(owner, id, lineNumber, reply.state);
+				}
+			}
+			finished = reply.finished;
+			char[] text = reply.text.toCharArray();
+			write(text, text.length);
+		}
+
+		/**
+		 * End the session, telling the player why.
+		 */
+		private void fail(String message) throws IOException
+		{
+			finished = true;
+			game = null;
+			char[] text = (message + "\n").toCharArray();
+			write(text, text.length);
+		}
+
+		/**
+		 * Arrange for the events queued for the player to be sent once the response in hand is written.
+		 * Called by whichever thread queued them.
+		 */
+		private synchronized void notifyEvents()
+		{
+			eventsNotified = true;
+			schedule();
+		}
+
+		/**
+		 * Encode a response and keep it for the serving thread to write. Called by the worker.
+		 */
+		public void write(char[] text, int length) throws IOException
+		{
+			ByteBuffer bytes = encoder.encode(CharBuffer.wrap(text, 0, length));
+			synchronized (this) {
+				if (unsent.remaining() < bytes.remaining()) {
+					ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * unsent.capacity(), unsent.position() + bytes.remaining()));
+					unsent = larger.put(unsent.flip());
+				}
+				unsent.put(bytes);
+			}
+		}
+
+		/**
+		 * Close the connection; the worker then leaves the game. Called by the serving thread.
+		 */
+		synchronized void close()
+		{
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (key != null) {
+				key.cancel();
+			}
+			try {
+				channel.close();
+			}
+			catch (IOException exception) {
+				// nothing is left to clean up
+			}
+			schedule();
+		}
+
+		/**
+		 * Put back what the player held in a shared world, or have the node playing the game drop it.
+		 */
+		private void cleanUp()
+		{
+			synchronized (this) {
+				cleanedUp = true;
+			}
+			if (!started) {
+				return;
+			}
+			if (game != null && !finished) {
+				game.leave();
+			}
+			if (name != null) {
+				playing.remove(name);
+			}
+			if (cluster != null && sessions.remove(id) == this && game == null && !finished) {
+				try {
+					cluster.sendClose(owner, id);
+				}
+				catch (IOException exception) {
+					// the node is gone, and the game with it
+				}
+			}
+		}
+	}
+}
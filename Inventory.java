@@ -0,0 +1,280 @@
+/**
+ * Inventory class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * An Inventory holds the items of a World that one player has picked up.
+ * It is the player's own copy of the item state of the shared World: one bit per item id records
+ * whether the item is held, and the number of held items is counted for each bitwise
+ * characteristic flag of Item, so asking whether the player holds an item of some type
+ * does not require searching the rooms. Listing the held items of some type combines the held bits with
+ * the World's bits of items of that type a whole word at a time, so it never looks at an Item object.
+ * In a world shared by several players, the inventory also claims every item it adds from SharedItems,
+ * and fails to add an item another player holds.
+ *
+ */
+
+public class Inventory
+{
+	private World world;
+	private long[] held;
+	private int[] flagCounts;
+	private SharedItems shared;     // who holds which item, if the items are shared with other players; null otherwise
+	private int player;             // this player's id in shared
+
+	/**
+	 * Precondition: world != null
+	 * Postcondition: Empty inventory for the items of world constructed; the items are this player's alone
+	 */
+	public Inventory(World world)
+	{
+		this(world, null);
+	}
+
+	/**
+	 * Precondition: world != null; shared is null or holds the items of world
+	 * Postcondition: Empty inventory for the items of world constructed, taking items from shared if it is not null
+	 */
+	public Inventory(World world, SharedItems shared)
+	{
+		this.world = world;
+		this.shared = shared;
+		held = new long[(world.getItemCount() + 63) / 64];
+		flagCounts = new int[Item.FLAG_COUNT];
+		if (shared != null) {
+			player = shared.join();
+		}
+	}
+
+	/**
+	 * Precondition: item belongs to the world of this inventory
+	 * Postcondition: Returns whether the player holds the given item
+	 */
+	public boolean contains(Item item)
+	{
+		return contains(item.getId());
+	}
+
+	/**
+	 * Precondition: 0 <= id < number of items in the world of this inventory
+	 * Postcondition: Returns whether the player holds the item with the given id
+	 */
+	public boolean contains(int id)
+	{
+		return (held[id >> 6] & (1L << id)) != 0;
+	}
+
+	/**
+	 * @return Whether the items are shared with other players.
+	 */
+	public boolean isShared()
+	{
+		return shared != null;
+	}
+
+	/**
+	 * Precondition: 0 <= id < number of items in the world of this inventory
+	 * Postcondition: Returns whether the item with the given id lies in its room for this player to take:
+	 *                not held by this player, nor by any other player sharing the items
+	 */
+	public boolean isAvailable(int id)
+	{
+		return shared == null ? !contains(id) : shared.getOwner(id) == 0;
+	}
+
+	/**
+	 * Precondition: the items of room are those with an id from first to end - 1
+	 * Postcondition: Returns whether any item of the room is available (see isAvailable)
+	 */
+	public boolean hasAvailable(int room, int first, int end)
+	{
+		return shared == null ? !containsAll(first, end) : shared.countFree(room) > 0;
+	}
+	/**
+	 * Precondition: 0 <= first <= end <= number of items in the world of this inventory
+	 * Postcondition: Returns whether the player holds every item with an id from first to end - 1
+	 */
+	public boolean containsAll(int first, int end)
+	{
+		if (first >= end) {
+			return true;
+		}
+		int firstWord = first >> 6;
+		int lastWord = (end - 1) >> 6;
+		for (int i = firstWord; i <= lastWord; i++) {
+			long mask = -1L;
+			if (i == firstWord) {
+				mask &= -1L << first;
+			}
+			if (i == lastWord) {
+				mask &= -1L >>> (63 - ((end - 1) & 63));
+			}
+			if ((held[i] & mask) != mask) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Precondition: item belongs to the world of this inventory
+	 * Postcondition: item is held by the player and counted under each of its characteristic flags; does nothing if already held.
+	 *                Returns false, holding nothing more, if another player sharing the items holds item
+	 */
+	public boolean add(Item item)
+	{
+		if (contains(item)) {
+			return true;
+		}
+		int id = item.getId();
+		if (shared != null && !shared.claim(id, player)) {
+			return false;
+		}
+		held[id >> 6] |= 1L << id;
+		updateCounts(item.getType(), 1);
+		return true;
+	}
+
+	/**
+	 * Precondition: item belongs to the world of this inventory
+	 * Postcondition: item is no longer held by the player; does nothing if it was not held
+	 */
+	public void remove(Item item)
+	{
+		if (!contains(item)) {
+			return;
+		}
+		int id = item.getId();
+		held[id >> 6] &= ~(1L << id);
+		updateCounts(item.getType(), -1);
+		if (shared != null) {
+			shared.release(id, player);
+		}
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: No item is held; in a shared world every item this player held is back in its room
+	 */
+	public void removeAll()
+	{
+		for (int i = 0; i < held.length; i++) {
+			long word = held[i];
+			while (word != 0) {
+				remove(world.getItem(64 * i + Long.numberOfTrailingZeros(word)));
+				word &= word - 1;
+			}
+		}
+	}
+
+	/**
+	 * @return A copy of the bits recording which items are held, one bit per item id, for saving the inventory.
+	 */
+	public long[] getHeldBits()
+	{
+		return held.clone();
+	}
+
+	/**
+	 * Precondition: bits was returned by getHeldBits of an inventory of the same world; the items are not shared
+	 * Postcondition: Exactly the items recorded in bits are held
+	 */
+	public void setHeldBits(long[] bits)
+	{
+		if (shared != null) {
+			throw new IllegalStateException("The items held in a shared world cannot be restored");
+		}
+		held = bits.clone();
+		flagCounts = new int[Item.FLAG_COUNT];
+		for (int i = 0; i < held.length; i++) {
+			long word = held[i];
+			while (word != 0) {
+				int id = 64 * i + Long.numberOfTrailingZeros(word);
+				updateCounts(world.getItem(id).getType(), 1);
+				word &= word - 1;
+			}
+		}
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Returns whether the player holds any item that contains the given bitwise characteristic flag
+	 */
+	public boolean hasItemWithCharacteristic(int characteristic)
+	{
+		for (int i = 0; i < Item.FLAG_COUNT; i++) {
+			if ((characteristic & (1 << i)) > 0 && flagCounts[i] > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Returns the held item with the given keyword if it contains the given bitwise characteristic flag; null otherwise
+	 */
+	public Item getItemWithCharacteristic(String keyword, int characteristic)
+	{
+		Item item = world.getItem(keyword);
+		if (item != null && contains(item) && (item.getType() & characteristic) > 0) {
+			return item;
+		}
+		return null;
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Returns the ids, in increasing order, of every held item that contains any of the given
+	 *                bitwise characteristic flags
+	 */
+	public int[] getItemsWithCharacteristic(int characteristic)
+	{
+		long[][] flagBits = world.getItemFlagBits();
+		long[][] wanted = new long[Item.FLAG_COUNT][];
+		int wantedCount = 0;
+		for (int i = 0; i < Item.FLAG_COUNT; i++) {
+			if ((characteristic & (1 << i)) > 0 && flagCounts[i] > 0) {
+				wanted[wantedCount++] = flagBits[i];
+			}
+		}
+		if (wantedCount == 0) {
+			return new int[0];
+		}
+
+		// First count the matching items, then collect them
+		int count = 0;
+		for (int word = 0; word < held.length; word++) {
+			count += Long.bitCount(held[word] & union(wanted, wantedCount, word));
+		}
+		int[] ids = new int[count];
+		int next = 0;
+		for (int word = 0; word < held.length && next < count; word++) {
+			long bits = held[word] & union(wanted, wantedCount, word);
+			while (bits != 0) {
+				ids[next++] = 64 * word + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+			}
+		}
+		return ids;
+	}
+
+	private static long union(long[][] bits, int count, int word)
+	{
+		long union = 0;
+		for (int i = 0; i < count; i++) {
+			union |= bits[i][word];
+		}
+		return union;
+	}
+
+	/**
+	 * Helper method that adds delta to the counter of every flag set in type.
+	 */
+	private void updateCounts(int type, int delta)
+	{
+		for (int i = 0; i < Item.FLAG_COUNT; i++) {
+			if ((type & (1 << i)) > 0) {
+				flagCounts[i] += delta;
+			}
+		}
+	}
+}
@@ -0,0 +1,161 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * Counts how often each duration, in nanoseconds, was recorded. As in an HDR histogram, every power of two
+ * is divided into SUB_BUCKETS equal buckets, so any percentile is reported within 1/SUB_BUCKETS of its true
+ * value while the whole range up to 2^MAX_EXPONENT ns takes a few hundred counters.
+ *
+ * Recording takes no lock. The counters are striped: every thread adds to one of several copies of the
+ * buckets, chosen by its thread id, so threads recording at the same time seldom touch the same counter.
+ * The copies are only added up when the histogram is read.
+ *
+ */
+
+public class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;     // about 18 minutes; longer durations are counted as this
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+	private static final int STRIPES = Math.min(64, Integer.highestOneBit(2 * Runtime.getRuntime().availableProcessors() - 1));
+
+	private AtomicLongArray counts;     // STRIPES copies of the buckets, one after another
+	private LongAdder total;
+	private LongAccumulator max;
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Empty histogram constructed
+	 */
+	public LatencyHistogram()
+	{
+		counts = new AtomicLongArray(STRIPES * BUCKETS);
+		total = new LongAdder();
+		max = new LongAccumulator(Long::max, 0);
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: One more duration of nanos is counted; negative durations are counted as 0
+	 */
+	public void record(long nanos)
+	{
+		long value = Math.max(0, nanos);
+		int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+		counts.getAndIncrement(stripe * BUCKETS + bucket(value));
+		total.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * @return The number of durations counted.
+	 */
+	public long getCount()
+	{
+		long count = 0;
+		for (long bucketCount : merged()) {
+			count += bucketCount;
+		}
+		return count;
+	}
+
+	/**
+	 * @return The mean of the durations counted, or 0 if there are none.
+	 */
+	public double getMean()
+	{
+		long count = getCount();
+		return count == 0 ? 0 : (double) total.sum() / count;
+	}
+
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * Precondition: 0 <= percentile <= 100
+	 * Postcondition: Returns the smallest bucket limit that at least percentile percent of the durations
+	 *                do not exceed, or 0 if there are none
+	 */
+	public long getPercentile(double percentile)
+	{
+		long[] buckets = merged();
+		long count = 0;
+		for (long bucketCount : buckets) {
+			count += bucketCount;
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long wanted = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += buckets[bucket];
+			if (seen >= wanted) {
+				return Math.min(highestValue(bucket), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Everything counted so far is forgotten; durations recorded at the same time may or may not be kept
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		total.reset();
+		max.reset();
+	}
+
+	/**
+	 * Helper method that returns the index of the bucket counting the given duration.
+	 */
+	private static int bucket(long value)
+	{
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		if (value >>> MAX_EXPONENT > 1) {
+			subBucket = SUB_BUCKETS - 1;
+		}
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Helper method that returns the largest duration counted by the given bucket.
+	 */
+	private static long highestValue(int bucket)
+	{
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+		return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	/**
+	 * Helper method that adds up the stripes.
+	 */
+	private long[] merged()
+	{
+		long[] buckets = new long[BUCKETS];
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				buckets[bucket] += counts.get(stripe * BUCKETS + bucket);
+			}
+		}
+		return buckets;
+	}
+}
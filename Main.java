@@ -1,22 +1,221 @@
-/**
- * A runner class for the game "Center of Madniverse."
- * Creates Game object and calls play method.
- *
- */
-
-public class Main
-{
-
-	/**
-	 * Starting point of runner class.
-	 * Precondition: None
-	 * Postcondition: Game object game will be executed; its play method is called
-	 */
-	public static void main(String[] args)
-	{
-		Game game = new Game();
-		game.play();
-
-	}
-
-}
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A runner class for the game "Center of Madniverse."
+ * Creates Game object and calls play method.
+ * Arguments:
+ *   (none)                                 play the standard map
+ *   <world file>                           play the map in the given source or compiled image (see World.load)
+ *   server [-j dir] [port] [world file]    host many games over loopback connections instead; with -j, keep each
+ *                                          player's progress in dir for them to carry on with (see SessionStore)
+ *   multiplayer [port] [world file]        host games that all share one world, seeing each other and competing for its items
+ *   node <index> <nodes> [base port] [world file]
+ *                                          host part of a world divided among several programs (see ClusterNode);
+ *                                          players connect to base port + index
+ *   compile <source file> <image file>     compile a world source into an image that loads without parsing
+ *   generate <rooms> <seed> <image file>   generate a random world of the given size (see WorldGenerator)
+ *   batch [-w world] [-t threads] [-s seed] [-m] [-o transcript dir] <script or dir>...
+ *                                          replay command scripts without prompts (see BatchRunner)
+ *   journal <dir> [world file]             play on the terminal, keeping progress in dir and resuming it (see SessionStore)
+ *   solve [world file]                     prove that the world can be won, and show how to win and lose it (see WorldSolver)
+ *
+ */
+
+public class Main
+{
+
+	/**
+	 * Starting point of runner class.
+	 * Precondition: None
+	 * Postcondition: Game object game will be executed; its play method is called.
+	 * If the first argument is "server", a GameServer is started instead and serves until the program is stopped;
+	 * "multiplayer" does the same with one world shared by all players, and "node" does it as one of several
+	 * programs dividing the world among them.
+	 * If the first argument is "compile", the world source is compiled and written as an image instead.
+	 * If the first argument is "generate", a random world is generated and written as an image instead.
+	 * If the first argument is "solve", the world is explored and a report on how to win it is printed instead.
+	 * If the first argument is "journal", the game is journaled and resumed from the given directory.
+	 * If the first argument is "batch", the given scripts (or every file in the given directories) are replayed instead.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length > 0 && (args[0].equals("server") || args[0].equals("multiplayer"))) {
+			int next = 1;
+			Path journals = null;
+			if (args[0].equals("server") && args.length > 2 && args[1].equals("-j")) {
+				journals = Paths.get(args[2]);
+				next = 3;
+			}
+			int port = GameServer.DEFAULT_PORT;
+			if (args.length > next) {
+				port = Integer.parseInt(args[next]);
+			}
+			World world = args.length > next + 1 ? World.load(Paths.get(args[next + 1])) : World.getStandardWorld();
+			GameServer server = new GameServer(port, world, args[0].equals("multiplayer"));
+			SessionStore store = journals == null ? null : new SessionStore(journals);
+			if (store != null) {
+				server.setSessionStore(store);
+			}
+			System.out.println("Center of Madniverse server listening on port " + server.getPort());
+			try {
+				server.serve();
+			}
+			finally {
+				if (store != null) {
+					store.close();
+				}
+			}
+			return;
+		}
+		if (args.length > 2 && args[0].equals("node")) {
+			int index = Integer.parseInt(args[1]);
+			int basePort = args.length > 3 ? Integer.parseInt(args[3]) : GameServer.DEFAULT_PORT;
+			World world = args.length > 4 ? World.load(Paths.get(args[4])) : World.getStandardWorld();
+			WorldPartition partition = new WorldPartition(world, Integer.parseInt(args[2]));
+			ClusterNode node = new ClusterNode(world, partition, index, basePort);
+			GameServer server = new GameServer(basePort + index, world, node);
+			System.out.println("Center of Madniverse node " + index + " of " + partition.getNodeCount() + " listening on port " + server.getPort()
+					+ ", playing rooms " + partition.getFirstRoom(index) + " to " + (partition.getFirstRoom(index + 1) - 1));
+			server.serve();
+			return;
+		}
+		if (args.length == 3 && args[0].equals("compile")) {
+			WorldCompiler.compile(Paths.get(args[1])).write(Paths.get(args[2]));
+			return;
+		}
+		if (args.length == 4 && args[0].equals("generate")) {
+			WorldGenerator generator = new WorldGenerator(Long.parseLong(args[2]));
+			generator.generate(Integer.parseInt(args[1])).write(Paths.get(args[3]));
+			return;
+		}
+		if (args.length > 1 && args[0].equals("journal")) {
+			World world = args.length > 2 ? World.load(Paths.get(args[2])) : World.getStandardWorld();
+			SessionStore store = new SessionStore(Paths.get(args[1]));
+			try {
+				store.open("console", world, System.in, Output.toConsole()).play();
+			}
+			finally {
+				store.close();
+			}
+			return;
+		}
+		if (args.length > 0 && args[0].equals("batch")) {
+			batch(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("solve")) {
+			solve(args.length > 1 ? World.load(Paths.get(args[1])) : World.getStandardWorld());
+			return;
+		}
+		World world = args.length > 0 ? World.load(Paths.get(args[0])) : World.getStandardWorld();
+		Game game = new Game(world, System.in, Output.toConsole());
+		game.play();
+
+	}
+
+	/**
+	 * Helper method that explores the world and prints how to win and lose it, and which items cannot be reached.
+	 */
+	private static void solve(World world)
+	{
+		long start = System.nanoTime();
+		WorldSolver solver = new WorldSolver(world);
+		long states = solver.solve();
+		long millis = (System.nanoTime() - start) / 1000000;
+		System.out.println(world.getRoomCount() + " rooms, " + world.getItemCount() + " items: " + states + " situations explored in " + millis + " ms");
+		List<String> winning = solver.getWinningCommands();
+		List<String> lucky = solver.getLuckyWinningCommands();
+		if (!solver.isWinnable()) {
+			System.out.println(lucky == null ? "The world cannot be won." : "The world cannot be won for sure: a teleport that goes wrong cannot be tried again.");
+		}
+		else if (winning == null) {
+			System.out.println("The world can only be won by trying the teleport again until it is kind.");
+		}
+		if (winning != null) {
+			System.out.println("Shortest way to win, " + winning.size() + " commands:");
+			winning.forEach(command -> System.out.println("  " + command));
+		}
+		if (lucky != null) {
+			System.out.println("Shortest way to win if the teleport is kind, " + lucky.size() + " commands:");
+			lucky.forEach(command -> System.out.println("  " + command));
+		}
+		for (List<String> losing : solver.getLosingCommands()) {
+			System.out.println("Shortest way to lose by \"" + losing.get(losing.size() - 1) + "\", " + losing.size() + " commands: "
+					+ String.join(", ", losing));
+		}
+		int[] unreachable = solver.getUnreachableItems();
+		System.out.println(unreachable.length + (unreachable.length == 1 ? " item cannot" : " items cannot") + " be reached" + (unreachable.length == 0 ? "." : ":"));
+		for (int i = 0; i < unreachable.length && i < 20; i++) {
+			Item item = world.getItem(unreachable[i]);
+			System.out.println("  " + item.getTitle() + " - " + item.getDescription());
+		}
+		if (unreachable.length > 20) {
+			System.out.println("  and " + (unreachable.length - 20) + " more");
+		}
+	}
+
+	/**
+	 * Helper method that reads the options and scripts of the "batch" command and replays the scripts.
+	 */
+	private static void batch(String[] args) throws IOException
+	{
+		World world = World.getStandardWorld();
+		int threads = Runtime.getRuntime().availableProcessors();
+		Path transcripts = null;
+		Long seed = null;
+		boolean shared = false;
+		List<Path> scripts = new ArrayList<Path>();
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-w") && i + 1 < args.length) {
+				world = World.load(Paths.get(args[++i]));
+			}
+			else if (args[i].equals("-t") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-s") && i + 1 < args.length) {
+				seed = Long.parseLong(args[++i]);
+			}
+			else if (args[i].equals("-m")) {
+				shared = true;
+			}
+			else if (args[i].equals("-o") && i + 1 < args.length) {
+				transcripts = Files.createDirectories(Paths.get(args[++i]));
+			}
+			else if (Files.isDirectory(Paths.get(args[i]))) {
+				try (Stream<Path> files = Files.list(Paths.get(args[i]))) {
+					files.filter(Files::isRegularFile).sorted().forEach(scripts::add);
+				}
+			}
+			else {
+				scripts.add(Paths.get(args[i]));
+			}
+		}
+		BatchRunner runner = new BatchRunner(world, threads, transcripts);
+		if (seed != null) {
+			runner.setSeed(seed);
+		}
+		if (shared) {
+			runner.shareItems();
+		}
+		long start = System.nanoTime();
+		try {
+			runner.run(scripts);
+		}
+		catch (IllegalArgumentException exception) {
+			System.err.println(exception.getMessage());
+			return;
+		}
+		catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+		long millis = (System.nanoTime() - start) / 1000000;
+		System.out.println(scripts.size() + " scripts in " + millis + " ms: " + runner.getFinishedCount() + " finished, "
+				+ runner.getUnfinishedCount() + " ran out of input, " + runner.getFailedCount() + " failed");
+	}
+}
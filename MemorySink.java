@@ -0,0 +1,42 @@
+/**
+ * MemorySink class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * A MemorySink keeps everything written to it, so the messages of a game can be inspected afterwards.
+ *
+ */
+
+public class MemorySink implements OutputSink
+{
+	private StringBuilder text;
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Empty sink constructed
+	 */
+	public MemorySink()
+	{
+		text = new StringBuilder();
+	}
+
+	public void write(char[] characters, int length)
+	{
+		text.append(characters, 0, length);
+	}
+
+	/**
+	 * @return Everything written to this sink since it was created or last cleared.
+	 */
+	public String getText()
+	{
+		return text.toString();
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Everything written so far is forgotten
+	 */
+	public void clear()
+	{
+		text.setLength(0);
+	}
+}
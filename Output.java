@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Output class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * All messages of a game are written to an Output. The Output collects them in a reusable buffer
+ * until flush is called, which happens once per turn when the player is prompted for the next
+ * command, and then passes the whole response to its OutputSink at once. Where the text goes is
+ * decided by the sink: the terminal or a connection (StreamSink), memory (MemorySink) or nowhere
+ * (OutputSink.DISCARD).
+ * Like PrintStream, an Output never throws an exception when writing fails; use checkError instead.
+ *
+ */
+
+public class Output
+{
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+
+	private OutputSink sink;
+	private char[] buffer;
+	private int length;
+	private boolean error;
+
+	/**
+	 * Precondition: sink != null
+	 * Postcondition: Output with an empty buffer constructed
+	 */
+	public Output(OutputSink sink)
+	{
+		this.sink = sink;
+		buffer = new char[1024];
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Returns an Output writing to the terminal
+	 */
+	public static Output toConsole()
+	{
+		return new Output(new StreamSink(System.out));
+	}
+
+	/**
+	 * Precondition: text != null
+	 * Postcondition: text is added to the response of this turn
+	 */
+	public void print(String text)
+	{
+		int textLength = text.length();
+		if (length + textLength > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, length + textLength));
+		}
+		text.getChars(0, textLength, buffer, length);
+		length += textLength;
+	}
+
+	/**
+	 * Precondition: text != null
+	 * Postcondition: text and a line separator are added to the response of this turn
+	 */
+	public void println(String text)
+	{
+		print(text);
+		print(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: A line separator is added to the response of this turn
+	 */
+	public void println()
+	{
+		print(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: The response collected so far is passed to the sink in one write; the buffer is empty
+	 */
+	public void flush()
+	{
+		if (length == 0) {
+			return;
+		}
+		try {
+			sink.write(buffer, length);
+		}
+		catch (IOException exception) {
+			error = true;
+		}
+		length = 0;
+	}
+
+	/**
+	 * @return true if writing to the sink has ever failed, for example because the player disconnected.
+	 */
+	public boolean checkError()
+	{
+		return error;
+	}
+}
@@ -0,0 +1,24 @@
+import java.io.IOException;
+
+/**
+ * This interface is part of the "Center of Madniverse" application.
+ *
+ * An OutputSink is where the messages of a game finally go: the terminal,
+ * a network connection, memory, or nowhere at all. Output collects the
+ * messages of a whole turn and passes them to its sink in one call.
+ */
+
+public interface OutputSink
+{
+    /**
+     * A sink that throws all text away, for running games whose messages
+     * nobody reads.
+     */
+    OutputSink DISCARD = (text, length) -> { };
+
+    /**
+     * Write characters 0 to length - 1 of text. The sink must not keep text,
+     * which is reused for the next turn.
+     */
+    void write(char[] text, int length) throws IOException;
+}
@@ -1,8 +1,13 @@
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 
 /**
- * This class is part of the "Center of Madniverse" application. 
- * 
+ * This class is part of the "Center of Madniverse" application.
+ *
  * This parser reads user input and tries to interpret it as an "Adventure"
  * command. Every time it is called it reads a line from the terminal and
  * tries to interpret the line as a two word command. It returns the command
@@ -11,67 +16,190 @@ import java.util.Scanner;
  * The parser has a set of known command words. It checks user input against
  * the known commands, and if the input is not one of the known commands, it
  * returns a command object that is marked as an unknown command.
- * 
+ *
+ * A line is either read from the parser's input or handed to it with setLine,
+ * and is then interpreted as a command or, during the math challenges, taken
+ * as an answer. Lines are read into a reusable character buffer and split into words in
+ * place. Command words are recognised by CommandWords without creating a
+ * String, second words are taken from a cache of recently seen words, and the
+ * same Command object is returned for every line, so reading a command
+ * normally creates no objects at all.
+ *
  * @author  Michael Kölling and David J. Barnes
  * Modified
  */
-public class Parser 
+public class Parser
 {
+    private static final int WORD_CACHE_SIZE = 256;    // must be a power of two
+
     private CommandWords commands;  // holds all valid command words
-    private Scanner reader;         // source of command input
+    private Reader reader;          // source of command input
+    private Output out;        // destination of prompts
+    private String prompt;          // printed before every line is read
+    private char[] buffer;          // characters read from reader
+    private int position;           // next unused character in buffer
+    private int limit;              // end of the characters read into buffer
+    private char[] line;            // the current input line
+    private int lineLength;
+    private String[] secondWords;   // recently seen second words, by hash
+    private Command command;        // returned by every call of getCommand
+    private StringBuilder record;   // lines read since the record was last cleared; null if not recording
 
     /**
      * Create a parser to read from the terminal window.
      */
-    public Parser() 
+    public Parser()
     {
-        commands = new CommandWords();
-        reader = new Scanner(System.in);
+        this(new CommandWords(), System.in, Output.toConsole());
     }
-    
+
     /**
-     * Method to get a raw line of user input in the midst of the control flow of the game.
-     * Needed for the math challenges.
-     * Precondition: reader != null
-     * Postcondition: Returns line of user input
-     * @return line of user input
+     * Create a parser to read from the given input, such as a network connection,
+     * printing prompts to the given output.
+     * @param commands The command words to recognise.
+     * @param in The source of command input.
+     * @param out The destination of prompts.
      */
-    public String getLine()
+    public Parser(CommandWords commands, InputStream in, Output out)
     {
-    	System.out.print("> ");
-    	return reader.nextLine();
+        this.commands = commands;
+        reader = new InputStreamReader(in);
+        this.out = out;
+        prompt = "> ";
+        buffer = new char[1024];
+        line = new char[128];
+        secondWords = new String[WORD_CACHE_SIZE];
+        command = new Command(CommandWords.UNKNOWN, null, null);
     }
 
     /**
-     * @return The next command from the user.
+     * Print the prompt and read the next line of user input, which then becomes the current line.
+     * Throws NoSuchElementException if the input has ended.
      */
-    public Command getCommand() 
+    public void readNextLine()
     {
-        String inputLine;   // will hold the full input line
-        String word1 = null;
-        String word2 = null;
+        printPrompt();
+        readLine();
+    }
 
-        System.out.print("> ");     // print prompt
+    /**
+     * Make the given text the current line, for input that arrives other than through this parser's
+     * stream, such as a line received by GameServer. The text is recorded like a line read.
+     * @param input One line of user input, without its line terminator.
+     */
+    public void setLine(CharSequence input)
+    {
+        int length = input.length();
+        if (length > line.length) {
+            line = new char[Math.max(length, 2 * line.length)];
+        }
+        for (int i = 0; i < length; i++) {
+            line[i] = input.charAt(i);
+        }
+        lineLength = length;
+        if (record != null) {
+            record.append(line, 0, lineLength).append('\n');
+        }
+    }
+
+    /**
+     * The current line as it was entered, such as the answer to a math challenge.
+     * @return The current line, without its line terminator.
+     */
+    public String getLineText()
+    {
+        return new String(line, 0, lineLength);
+    }
+
+    /**
+     * Read the next line and interpret it as a command.
+     * The Command returned is reused by the next call, so it must not be kept.
+     * Throws NoSuchElementException if the input has ended.
+     * @return The next command from the user.
+     */
+    public Command getCommand()
+    {
+        readNextLine();
+        return parseCommand();
+    }
 
-        inputLine = reader.nextLine();
+    /**
+     * Interpret the current line as a command.
+     * The Command returned is reused by the next call, so it must not be kept.
+     * @return The command on the current line.
+     */
+    public Command parseCommand()
+    {
+        int commandId = CommandWords.UNKNOWN;
+        String word2 = null;
 
         // Find up to two words on the line.
-        Scanner tokenizer = new Scanner(inputLine);
-        if(tokenizer.hasNext()) {
-            word1 = tokenizer.next();      // get first word
-            if(tokenizer.hasNext()) {
-                word2 = tokenizer.next();      // get second word
+        int start1 = skipSpace(0);
+        int end1 = skipWord(start1);
+        if (start1 < end1) {
+            commandId = commands.getCommandId(line, start1, end1 - start1);
+            int start2 = skipSpace(end1);
+            int end2 = skipWord(start2);
+            if (start2 < end2) {
+                word2 = secondWord(start2, end2);
                 // note: we just ignore the rest of the input line.
             }
         }
 
-        // Now check whether this word is known. If so, create a command
-        // with it. If not, create a "null" command (for unknown command).
-        if(commands.isCommand(word1)) {
-            return new Command(word1, word2);
+        // Now check whether this word is known. If not, the command is
+        // marked as unknown by its command id.
+        if (commandId != CommandWords.UNKNOWN) {
+            command.set(commandId, commands.getWord(commandId), word2);
         }
         else {
-            return new Command(null, word2); 
+            command.set(CommandWords.UNKNOWN, null, word2);
+        }
+        return command;
+    }
+
+    /**
+     * Print the prompt and pass everything printed so far to the player.
+     */
+    public void printPrompt()
+    {
+        out.print(prompt);
+        out.flush();
+    }
+
+    /**
+     * Set the prompt printed before every line is read; the empty string prints no prompt.
+     * @param prompt The new prompt.
+     */
+    public void setPrompt(String prompt)
+    {
+        this.prompt = prompt;
+    }
+
+    /**
+     * Start or stop keeping every line read in a record, so that the input of a command can be journaled.
+     * @param recording true to start keeping lines, false to stop and discard the record.
+     */
+    public void setRecording(boolean recording)
+    {
+        record = recording ? new StringBuilder() : null;
+    }
+
+    /**
+     * @return The lines read since the record was last cleared, each ending with a newline;
+     *         null if the parser is not recording.
+     */
+    public CharSequence getRecord()
+    {
+        return record;
+    }
+
+    /**
+     * Start a new, empty record.
+     */
+    public void clearRecord()
+    {
+        if (record != null) {
+            record.setLength(0);
         }
     }
 
@@ -80,6 +208,101 @@ public class Parser
      */
     public void showCommands()
     {
-        commands.showAll();
+        commands.showAll(out);
+    }
+
+    /**
+     * Helper method that reads the next line of input into line, without its line terminator.
+     * Throws NoSuchElementException if the input has ended.
+     */
+    private void readLine()
+    {
+        lineLength = 0;
+        boolean readAny = false;
+        while (true) {
+            if (position == limit && !fillBuffer()) {
+                if (!readAny) {
+                    throw new NoSuchElementException("No line found");
+                }
+                break;
+            }
+            readAny = true;
+            char c = buffer[position++];
+            if (c == '\n') {
+                break;
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, 2 * lineLength);
+            }
+            line[lineLength++] = c;
+        }
+        if (lineLength > 0 && line[lineLength - 1] == '\r') {
+            lineLength--;
+        }
+        if (record != null) {
+            record.append(line, 0, lineLength).append('\n');
+        }
+    }
+
+    /**
+     * Helper method that reads more characters into buffer.
+     * @return false if the input has ended (or failed).
+     */
+    private boolean fillBuffer()
+    {
+        try {
+            limit = reader.read(buffer, 0, buffer.length);
+        }
+        catch (IOException exception) {
+            limit = -1;
+        }
+        position = 0;
+        if (limit <= 0) {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private int skipSpace(int index)
+    {
+        while (index < lineLength && Character.isWhitespace(line[index])) {
+            index++;
+        }
+        return index;
+    }
+
+    private int skipWord(int index)
+    {
+        while (index < lineLength && !Character.isWhitespace(line[index])) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Helper method that returns the word in characters start to end - 1 of line, reusing the
+     * String from the cache of second words if the same word was seen before.
+     */
+    private String secondWord(int start, int end)
+    {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + line[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (WORD_CACHE_SIZE - 1);
+        String cached = secondWords[slot];
+        if (cached != null && cached.length() == end - start) {
+            int i = 0;
+            while (i < end - start && cached.charAt(i) == line[start + i]) {
+                i++;
+            }
+            if (i == end - start) {
+                return cached;
+            }
+        }
+        String word = new String(line, start, end - start);
+        secondWords[slot] = word;
+        return word;
     }
 }
@@ -1,7 +1,4 @@
-import java.util.Set;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Class Room - a room in an adventure game.
@@ -10,8 +7,15 @@ import java.util.ArrayList;
  *
  * A "Room" represents one location in the scenery of the game.  It is 
  * connected to other rooms via exits.  For each existing exit, the room 
- * stores a reference to the neighboring room.
- * Room objects can have items represented as Item objects.
+ * stores the id of the neighboring room, which is looked up in the World.
+ * Exits in the usual directions are kept in an array indexed by Direction;
+ * the few exits with other names are kept in small arrays of their own.
+ * Room objects can have items represented as Item objects. The items of a
+ * room are a range of item ids, so finding an item in a room takes a single
+ * comparison however many items the room has.
+ * Rooms are created by their World the first time they are needed.
+ * The text shown for a room is built once and kept until the room's exits
+ * or items change, so moving around and searching only copy ready-made text.
  * 
  * @author  Michael Kölling and David J. Barnes
  * Modified
@@ -19,69 +23,87 @@ import java.util.ArrayList;
 
 public class Room 
 {
+    private World world;
+    private int id;
     private String description;
-    private HashMap<String, Room> exits;        // stores exits of this room.
-    private ArrayList<Item> items;
-    private static ArrayList<Room> allRooms = new ArrayList<Room>();
-    private static ArrayList<Room> teleportRooms = new ArrayList<Room>();
+    private int[] exits;                // neighbor id by Direction ordinal; -1 for no exit
+    private String[] namedExits;        // names of exits in other directions
+    private int[] namedExitTargets;     // neighbor ids of the named exits
+    private int firstItem;              // the items of this room have ids firstItem to itemEnd - 1
+    private int itemEnd;
+    private boolean teleportable;
+    private volatile String longDescription;    // built when first needed; null after exits change
+    private volatile String[] itemLines;        // "title - description" of each item; null after items change
 
     /**
-     * Default constructor.
-     * Teleport room uses default constructor; not added to static field allRooms
-     * Precondition: None
-     * Postcondition: Room constructed described as a teleport
+     * Create room number "id" of the given world, described "description".
+     * Initially, it has no exits. "description" is something like "a kitchen" or
+     * "an open court yard".
+     * Room may be used as a teleport destination only if teleportable is true.
+     * Precondition: world != null && description != null
+     * Postcondition: Room object constructed; isTeleportable() returns teleportable
      */
-    public Room()
+    public Room(World world, int id, String description, boolean teleportable) 
     {
-        this.description = "in a teleport";
-        exits = new HashMap<>();
-        items = new ArrayList<Item>();
+        this.world = world;
+        this.id = id;
+        this.description = description;
+        exits = new int[Direction.count()];
+        Arrays.fill(exits, -1);
+        namedExits = new String[0];
+        namedExitTargets = new int[0];
+        this.teleportable = teleportable;
     }
     
     /**
-     * Create a room described "description". Initially, it has
-     * no exits. "description" is something like "a kitchen" or
-     * "an open court yard".
-     * Room is added to Room.teleportRooms for use with the teleport and Room.allRooms.
-     * Precondition: description != null
-     * Postcondition: Room object constructed; reference added to Room.allRooms and Room.teleportRooms
+     * @return The id of this room, unique among the rooms of its World.
      */
-    public Room(String description) 
+    public int getId()
     {
-        this.description = description;
-        exits = new HashMap<>();
-        items = new ArrayList<Item>();
-        allRooms.add(this);
-        teleportRooms.add(this);
+        return id;
     }
     
     /**
-     * Create a room described "description". Initially, it has
-     * no exits. "description" is something like "a kitchen" or
-     * "an open court yard".
-     * Room is added to Room.teleportRooms for use with the teleport only if teleportable is true and Room.allRooms.
-     * Precondition: description != null
-     * Postcondition: Room object constructed; only added to Room.teleportRooms if teleportable is true; added to Room.allRooms
+     * @return Whether the teleport may send the player to this room.
      */
-    public Room(String description, boolean teleportable) 
+    public boolean isTeleportable()
     {
-        this.description = description;
-        exits = new HashMap<>();
-        items = new ArrayList<Item>();
-        allRooms.add(this);
-        if (teleportable) {
-        	teleportRooms.add(this);
-        }
+        return teleportable;
     }
     
     /**
      * Define an exit from this room.
      * @param direction The direction of the exit.
-     * @param neighbor  The room to which the exit leads.
+     * @param neighbor  The id of the room to which the exit leads.
+     */
+    public void setExit(Direction direction, int neighbor) 
+    {
+        exits[direction.ordinal()] = neighbor;
+        longDescription = null;
+    }
+
+    /**
+     * Define an exit from this room. The direction may be any word; if it is
+     * not one of the Direction values, the exit is a named exit.
+     * @param direction The direction of the exit.
+     * @param neighbor  The id of the room to which the exit leads.
      */
-    public void setExit(String direction, Room neighbor) 
+    public void setExit(String direction, int neighbor) 
     {
-        exits.put(direction, neighbor);
+        Direction standard = Direction.fromWord(direction);
+        if (standard != null) {
+            setExit(standard, neighbor);
+            return;
+        }
+        int index = namedExitIndex(direction);
+        if (index == -1) {
+            index = namedExits.length;
+            namedExits = Arrays.copyOf(namedExits, index + 1);
+            namedExitTargets = Arrays.copyOf(namedExitTargets, index + 1);
+            namedExits[index] = direction;
+        }
+        namedExitTargets[index] = neighbor;
+        longDescription = null;
     }
 
     /**
@@ -101,7 +123,12 @@ public class Room
      */
     public String getLongDescription()
     {
-        return "You are " + description + ".\n" + getExitString();
+        String text = longDescription;
+        if (text == null) {
+            text = "You are " + description + ".\n" + getExitString();
+            longDescription = text;
+        }
+        return text;
     }
 
     /**
@@ -111,12 +138,16 @@ public class Room
      */
     private String getExitString()
     {
-        String returnString = "Exits:";
-        Set<String> keys = exits.keySet();
-        for(String exit : keys) {
-            returnString += " " + exit;
+        StringBuilder returnString = new StringBuilder("Exits:");
+        for(int i = 0; i < exits.length; i++) {
+            if (exits[i] != -1) {
+                returnString.append(' ').append(Direction.get(i));
+            }
         }
-        return returnString;
+        for(String exit : namedExits) {
+            returnString.append(' ').append(exit);
+        }
+        return returnString.toString();
     }
 
     /**
@@ -127,131 +158,132 @@ public class Room
      */
     public Room getExit(String direction) 
     {
-        return exits.get(direction);
+        Direction standard = Direction.fromWord(direction);
+        if (standard != null) {
+            return getExit(standard);
+        }
+        int index = namedExitIndex(direction);
+        if (index == -1) {
+            return null;
+        }
+        return world.getRoom(namedExitTargets[index]);
     }
-    
+
     /**
-     * Precondition: items != null && item != null
-     * Postcondition: Item is added to the current room's ArrayList of Item objects
+     * Return the room that is reached if we go from this room in the given
+     * direction. If there is no room in that direction, return null.
+     * @param direction The exit's direction.
+     * @return The room in the given direction.
      */
-    public void addItem(Item item)
+    public Room getExit(Direction direction) 
     {
-    	items.add(item);
+        int neighbor = exits[direction.ordinal()];
+        if (neighbor == -1) {
+            return null;
+        }
+        return world.getRoom(neighbor);
+    }
+
+    private int namedExitIndex(String direction)
+    {
+        for (int i = 0; i < namedExits.length; i++) {
+            if (namedExits[i].equals(direction)) {
+                return i;
+            }
+        }
+        return -1;
     }
     
     /**
-     * Precondition: items != null
-     * Postcondition: Returns an ArrayList of String descriptions of items in the current room
+     * Give this room its items. A World numbers the items of each room consecutively, so the items
+     * of a room are a range of item ids and any item is found in a room by comparing its id.
+     * Precondition: 0 <= first <= end <= number of items in the world
+     * Postcondition: The room holds exactly the items with ids first to end - 1
      */
-    public ArrayList<String> listItemDescriptions()
+    public void setItems(int first, int end)
     {
-    	ArrayList<String> descriptions = new ArrayList<String>();
-    	if (items.size() > 0) {
-    		Iterator<Item> iterator = items.iterator();
-    		while (iterator.hasNext()) {
-    			Item currentItem = iterator.next();
-    			if (!currentItem.isFound()) {
-    				descriptions.add(currentItem.getTitle() + " - " + currentItem.getDescription());
-    				}
-    		}
-    	}
-    	return descriptions;
+    	firstItem = first;
+    	itemEnd = end;
+    	itemLines = null;
     }
     
     /**
-     * Precondition: items != null && keyword != null
-     * Postcondition: Item with matching keyword in current room is picked up, found field of that item set to true
+     * Precondition: None
+     * Postcondition: Returns whether item is one of the items of this room; false if item is null
      */
-    public void pickUpItem(String keyword)
+    public boolean hasItem(Item item)
     {
-    	Iterator<Item> iterator = items.iterator();
-    	while (iterator.hasNext()) {
-    		Item currentItem = iterator.next();
-    		if (currentItem.getTitle().equals(keyword)) {
-    			currentItem.get();
-    			return;
-    		}
-    	}
-    	System.out.println("Item not found");;
+    	return item != null && item.getId() >= firstItem && item.getId() < itemEnd;
     }
     
     /**
-     * Precondition: items != null && keyword != null
-     * Postcondition: Item is put back in original room, found field of that item set to false
+     * Precondition: inventory != null
+     * Postcondition: Returns whether the room has an item that is not in the inventory (nor, in a shared world, held by anybody else)
      */
-    public void removeItem(String keyword)
+    public boolean hasItemsNotIn(Inventory inventory)
     {
-    	Iterator<Item> iterator = items.iterator();
-    	while (iterator.hasNext()) {
-    		Item currentItem = iterator.next();
-    		if (currentItem.getTitle().equals(keyword)) {
-    			currentItem.remove();
-    			return;
-    		}
-    	}
-    	System.out.println("Item not in your inventory, or you tried to put an item back in something other than its original location, which is forbidden.");
+    	return inventory.hasAvailable(id, firstItem, itemEnd);
     }
     
     /**
-     * Precondition: items != null
-     * Postcondition: Returns ArrayList of String values of item keywords that the user has found that contain the given bitwise characteristic flag in the current room
+     * Precondition: inventory != null && out != null
+     * Postcondition: Prints the description of every item in the current room that is not in the inventory (nor, in a shared
+     * world, held by anybody else), one per line
      */
-    public ArrayList<String> getFoundItemsWithCharacteristic(int characteristic)
+    public void printItemDescriptions(Inventory inventory, Output out)
     {
-    	ArrayList<String> titles = new ArrayList<String>();
-    	Iterator<Item> iterator = items.iterator();
-    	while (iterator.hasNext()) {
-    		Item currentItem = iterator.next();
-    		if ((currentItem.isFound()) && (currentItem.getType() & characteristic) > 0) {
-    			titles.add(currentItem.getTitle());
+    	String[] lines = itemLines;
+    	if (lines == null) {
+    		lines = new String[itemEnd - firstItem];
+    		for (int i = 0; i < lines.length; i++) {
+    			Item item = world.getItem(firstItem + i);
+    			lines[i] = item.getTitle() + " - " + item.getDescription();
+    		}
+    		itemLines = lines;
+    	}
+    	for (int i = 0; i < lines.length; i++) {
+    		if (inventory.isAvailable(firstItem + i)) {
+    			out.println(lines[i]);
     		}
     	}
-    	return titles;
     }
     
     /**
-     * Precondition: Room.allRooms.size() > 0
-     * Postcondition: Returns ArrayList of String values of item keywords that the user has found that contain the given bitwise characteristic flag in the rooms in Room.allRooms
+     * Precondition: inventory != null && out != null
+     * Postcondition: item is picked up and added to the inventory if it is in the current room; error message printed otherwise
      */
-    public static ArrayList<String> getAllFoundItemsWithCharacteristic(int characteristic)
+    public void pickUpItem(Item item, Inventory inventory, Output out)
     {
-    	ArrayList<String> titles = new ArrayList<String>();
-    	Iterator<Room> iterator = allRooms.iterator();
-    	while (iterator.hasNext()) {
-    		Room currentRoom = iterator.next();
-    		ArrayList<String> foundItems = currentRoom.getFoundItemsWithCharacteristic(characteristic);
-    		Iterator<String> itemsIterator = foundItems.iterator();
-    		while (itemsIterator.hasNext()) {
-    			titles.add(itemsIterator.next());
-    		}
+    	if (hasItem(item)) {
+    		item.get(inventory, out);
+    	}
+    	else {
+    		out.println("Item not found");
     	}
-    	return titles;
     }
     
     /**
-     * Precondition: items != null && keyword != null
-     * Postcondition: Returns if an item may be found in the room
+     * Precondition: inventory != null && out != null
+     * Postcondition: item is put back in original room and removed from the inventory if it belongs to the current room;
+     * error message printed otherwise
      */
-    public boolean itemIncluded(String keyword)
+    public void removeItem(Item item, Inventory inventory, Output out)
     {
-    	Iterator<Item> iterator = items.iterator();
-    	while (iterator.hasNext()) {
-    		Item currentItem = iterator.next();
-    		if (currentItem.getTitle().equals(keyword)) {
-    			return true;
-    		}
+    	if (hasItem(item)) {
+    		item.remove(inventory, out);
+    	}
+    	else {
+    		out.println("Item not in your inventory, or you tried to put an item back in something other than its original location, which is forbidden.");
     	}
-    	return false;
     }
     
     /**
-     * Precondition: Room.teleportRooms.size() > 0
-     * Postcondition: Returns a random room reference from the list of Room references.
+     * Precondition: keyword != null
+     * Postcondition: Returns if an item with the given title may be found in the room
      */
-    public static Room getRandomRoomReference()
+    public boolean itemIncluded(String keyword)
     {
-    	int location = (int) (Math.random() * (teleportRooms.size()));
-    	return teleportRooms.get(location);
+    	return hasItem(world.getItem(keyword));
     }
-}
 
+}
\ No newline at end of file
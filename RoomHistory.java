@@ -0,0 +1,112 @@
+/**
+ * RoomHistory class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * The rooms a player has come from, most recent last, for the "back" command. The ids of the rooms are
+ * kept in a ring buffer that starts small and doubles as the player wanders, up to its capacity: once that
+ * is reached, remembering another room forgets the oldest, so a game never takes more memory however long
+ * it is played, and one that stays near the start takes little.
+ *
+ */
+
+public class RoomHistory
+{
+	public static final int DEFAULT_CAPACITY = 1024;
+	private static final int INITIAL_SLOTS = 8;
+
+	private int[] rooms;
+	private int capacity;   // the most rooms remembered; rooms grows up to this length
+	private int newest;     // index of the most recent room in rooms
+	private int size;
+
+	/**
+	 * Precondition: capacity > 0
+	 * Postcondition: Empty history remembering up to capacity rooms constructed
+	 */
+	public RoomHistory(int capacity)
+	{
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("A history must hold at least one room");
+		}
+		this.capacity = capacity;
+		rooms = new int[Math.min(capacity, INITIAL_SLOTS)];
+		newest = rooms.length - 1;
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: room is the most recent room; the oldest room is forgotten if the history was full
+	 */
+	public void push(int room)
+	{
+		if (size == rooms.length && size < capacity) {
+			grow();
+		}
+		newest = newest + 1 == rooms.length ? 0 : newest + 1;
+		rooms[newest] = room;
+		if (size < rooms.length) {
+			size++;
+		}
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Returns and forgets the most recent room, or returns -1 if the history is empty
+	 */
+	public int pop()
+	{
+		if (size == 0) {
+			return -1;
+		}
+		int room = rooms[newest];
+		newest = newest == 0 ? rooms.length - 1 : newest - 1;
+		size--;
+		return room;
+	}
+
+	/**
+	 * Precondition: 0 <= age < size()
+	 * Postcondition: Returns the room remembered age rooms before the most recent one (0 for the most recent)
+	 */
+	public int get(int age)
+	{
+		int index = newest - age;
+		return index >= 0 ? rooms[index] : rooms[index + rooms.length];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: No rooms are remembered
+	 */
+	public void clear()
+	{
+		size = 0;
+	}
+
+	/**
+	 * Helper method that doubles the ring, up to the capacity, keeping the rooms oldest first from index 0.
+	 */
+	private void grow()
+	{
+		int[] larger = new int[Math.min(2 * rooms.length, capacity)];
+		for (int age = size - 1; age >= 0; age--) {
+			larger[size - 1 - age] = get(age);
+		}
+		rooms = larger;
+		newest = size - 1;
+	}
+}
@@ -0,0 +1,224 @@
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * RoomPresence class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * Who is in which room of a World shared by several players, so that players in the same room see each
+ * other come and go and pick things up. Every room that has ever been entered keeps the set of its
+ * occupants; telling a room about something visits only the players in that room, so it costs the same
+ * however many players are in the other rooms.
+ *
+ * Every player receives what happens around them in a small queue of their own. A player who does not
+ * keep up, such as a client that has stopped reading, misses what no longer fits in the queue and is
+ * later told how much was missed; nobody else ever waits for them.
+ *
+ */
+
+public class RoomPresence
+{
+	public static final int QUEUE_EVENTS = 64;  // events kept for a player who has not seen them yet
+	private static final int NAMES_SHOWN = 5;   // players named when listing who is in a room
+
+	private AtomicReferenceArray<Set<Occupant>> rooms;  // by room id: its occupants; null until first entered
+	private AtomicInteger players;                      // numbers given to players so far
+
+	/**
+	 * Precondition: world != null
+	 * Postcondition: Nobody is in any room of world
+	 */
+	public RoomPresence(World world)
+	{
+		rooms = new AtomicReferenceArray<>(world.getRoomCount());
+		players = new AtomicInteger();
+	}
+
+	/**
+	 * A new player, not yet in any room. onEvent, if not null, is run whenever something is queued for
+	 * the player, by whichever thread caused it; it should only arrange for the events to be taken.
+	 * Precondition: None
+	 * Postcondition: Returns the player, named after a number that no other player of these rooms has
+	 */
+	public Occupant join(Runnable onEvent)
+	{
+		return new Occupant("Player " + players.incrementAndGet(), onEvent);
+	}
+
+	/**
+	 * Precondition: 0 <= room < number of rooms
+	 * Postcondition: Returns how many players are in the room
+	 */
+	public int countOccupants(int room)
+	{
+		Set<Occupant> occupants = rooms.get(room);
+		return occupants == null ? 0 : occupants.size();
+	}
+
+	/**
+	 * Helper method that returns the occupants of the room, creating the set the first time it is needed.
+	 */
+	private Set<Occupant> occupants(int room)
+	{
+		Set<Occupant> occupants = rooms.get(room);
+		if (occupants == null) {
+			rooms.compareAndSet(room, null, ConcurrentHashMap.newKeySet());
+			occupants = rooms.get(room);
+		}
+		return occupants;
+	}
+
+	/**
+	 * Helper method that queues event for everyone in the room except the player who caused it.
+	 */
+	private void publish(int room, Occupant from, String event)
+	{
+		Set<Occupant> occupants = rooms.get(room);
+		if (occupants == null) {
+			return;
+		}
+		for (Occupant occupant : occupants) {
+			if (occupant != from) {
+				occupant.deliver(event);
+			}
+		}
+	}
+
+	/**
+	 * One player and the events waiting for them. Only the player's own game moves the player; events
+	 * may be queued for them by any thread.
+	 */
+	public class Occupant
+	{
+		private String name;
+		private int room;                           // id of the room the player is in; -1 if in none
+		private ArrayBlockingQueue<String> events;  // what happened around the player, oldest first
+		private AtomicInteger missed;               // events that did not fit in the queue since it was last taken
+		private Runnable onEvent;
+
+		private Occupant(String name, Runnable onEvent)
+		{
+			this.name = name;
+			this.onEvent = onEvent;
+			room = -1;
+			events = new ArrayBlockingQueue<>(QUEUE_EVENTS);
+			missed = new AtomicInteger();
+		}
+
+		/**
+		 * @return The name the other players know this player by.
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * Precondition: 0 <= to < number of rooms
+		 * Postcondition: The player is in room to; the players in the room left are told departure and those
+		 *                in room to are told arrival. Nobody is told anything if the player was there already
+		 */
+		public void moveTo(int to, String departure, String arrival)
+		{
+			if (to == room) {
+				return;
+			}
+			leave(departure);
+			occupants(to).add(this);
+			room = to;
+			publish(to, this, arrival);
+		}
+
+		/**
+		 * Precondition: None
+		 * Postcondition: The player is in no room; the players in the room left are told departure
+		 */
+		public void leave(String departure)
+		{
+			if (room == -1) {
+				return;
+			}
+			rooms.get(room).remove(this);
+			publish(room, this, departure);
+			room = -1;
+		}
+
+		/**
+		 * Precondition: event != null
+		 * Postcondition: Everyone else in the player's room is told event
+		 */
+		public void announce(String event)
+		{
+			if (room != -1) {
+				publish(room, this, event);
+			}
+		}
+
+		/**
+		 * Precondition: None
+		 * Postcondition: Returns who else is in the player's room, such as "Player 2 and Player 5", naming only
+		 *                a few of a crowd; null if nobody else is
+		 */
+		public String describeOthers()
+		{
+			if (room == -1) {
+				return null;
+			}
+			StringBuilder names = new StringBuilder();
+			int others = 0;
+			for (Occupant occupant : rooms.get(room)) {
+				if (occupant == this) {
+					continue;
+				}
+				if (others < NAMES_SHOWN) {
+					names.append(others == 0 ? "" : ", ").append(occupant.name);
+				}
+				others++;
+			}
+			if (others == 0) {
+				return null;
+			}
+			if (others > NAMES_SHOWN) {
+				names.append(" and ").append(others - NAMES_SHOWN).append(" others");
+			}
+			return names.toString();
+		}
+
+		/**
+		 * Precondition: out != null
+		 * Postcondition: Prints every event queued for the player, one per line, followed by a note of how
+		 *                many were missed, and empties the queue; returns whether anything was printed
+		 */
+		public boolean printEvents(Output out)
+		{
+			boolean printed = false;
+			String event;
+			while ((event = events.poll()) != null) {
+				out.println(event);
+				printed = true;
+			}
+			int lost = missed.getAndSet(0);
+			if (lost > 0) {
+				out.println("(" + lost + (lost == 1 ? " more thing" : " more things") + " happened around you meanwhile.)");
+				printed = true;
+			}
+			return printed;
+		}
+
+		/**
+		 * Helper method that queues event for the player, or counts it as missed if the queue is full.
+		 */
+		private void deliver(String event)
+		{
+			if (!events.offer(event)) {
+				missed.incrementAndGet();
+				return;
+			}
+			if (onEvent != null) {
+				onEvent.run();
+			}
+		}
+	}
+}
@@ -0,0 +1,200 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/**
+ * RoutingIndex class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * Finds shortest routes between the rooms of a World, for the "goto" command.
+ *
+ * The exits of the world are held as a table of incoming exits per room. A route to a destination is found
+ * by one breadth-first search backwards from it, which gives every room the exit to take towards the
+ * destination; that table of next steps is kept, so every later route to the same destination is found by
+ * following it, in time proportional to the length of the route. A table holds one byte per room (which of
+ * the room's exits to take), so a table of a world of a million rooms takes a megabyte. The tables of the
+ * rooms that matter in every game (the start room, the room with the target, the challenge room and the
+ * locked room) are computed in parallel when the index is built and always kept; those of the most recently
+ * used other destinations are kept up to a total of CACHE_BYTES.
+ *
+ * A table that is not kept is computed on the common fork/join pool rather than by the thread asking for
+ * the route, and players asking for the same destination meanwhile wait for that one computation.
+ *
+ * Routes never pass through a teleport, whose destination is random, nor take any exit of a room after its
+ * first MAX_EXITS. A player without a key is never routed into the locked room, nor through the challenge
+ * room, which would pose the math challenges; the challenge room may still be the destination. A World
+ * never changes once loaded, so neither does its index.
+ *
+ */
+
+public class RoutingIndex
+{
+	public static final int CACHE_BYTES = 16 << 20;     // most bytes of tables kept for destinations other than the special rooms
+	public static final int MAX_EXITS = 255;            // exits of a room that routes may take
+	private static final int MAX_CACHED = 64;           // most tables kept for other destinations, however small
+
+	private World world;
+	private int roomCount;
+	private int[] incomingStart;    // the incoming exits of room r are incomingFrom[incomingStart[r] .. incomingStart[r + 1] - 1]
+	private int[] incomingFrom;     // the room each incoming exit leaves from
+	private byte[] incomingSlot;    // which exit of that room it is, plus one; 0 if after the first MAX_EXITS
+	private Map<Long, byte[]> pinned;                           // tables of the special rooms, never dropped
+	private Map<Long, CompletableFuture<byte[]>> nextSteps;     // tables of recent destinations, or their computation
+
+	/**
+	 * Precondition: world != null
+	 * Postcondition: Index of world constructed, with routes to its special rooms already computed
+	 */
+	public RoutingIndex(World world)
+	{
+		this.world = world;
+		WorldImage image = world.getImage();
+		roomCount = image.getRoomCount();
+		int cached = Math.max(1, Math.min(MAX_CACHED, CACHE_BYTES / Math.max(1, roomCount)));
+		nextSteps = new LinkedHashMap<Long, CompletableFuture<byte[]>>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Long, CompletableFuture<byte[]>> eldest)
+			{
+				return size() > cached;
+			}
+		};
+
+		// Group the exits by the room they lead to
+		incomingStart = new int[roomCount + 1];
+		int exitCount = image.getExitCount();
+		for (int exit = 0; exit < exitCount; exit++) {
+			incomingStart[image.getExitTarget(exit) + 1]++;
+		}
+		for (int room = 0; room < roomCount; room++) {
+			incomingStart[room + 1] += incomingStart[room];
+		}
+		int[] next = Arrays.copyOf(incomingStart, roomCount);
+		incomingFrom = new int[exitCount];
+		incomingSlot = new byte[exitCount];
+		for (int room = 0; room < roomCount; room++) {
+			int first = image.getExitStart(room);
+			for (int exit = first; exit < image.getExitStart(room + 1); exit++) {
+				int incoming = next[image.getExitTarget(exit)]++;
+				incomingFrom[incoming] = room;
+				incomingSlot[incoming] = exit - first < MAX_EXITS ? (byte) (exit - first + 1) : 0;
+			}
+		}
+
+		int[] specialRooms = { image.getStartRoom(), image.getMainRoom(), image.getChallengeRoom(), image.getLockedRoom() };
+		byte[][] tables = new byte[2 * specialRooms.length][];
+		IntStream.range(0, tables.length).parallel()
+				.filter(i -> specialRooms[i / 2] != -1)
+				.forEach(i -> tables[i] = computeNextSteps(specialRooms[i / 2], i % 2 == 1));
+		pinned = new HashMap<Long, byte[]>();
+		for (int i = 0; i < tables.length; i++) {
+			if (tables[i] != null) {
+				pinned.put(key(specialRooms[i / 2], i % 2 == 1), tables[i]);
+			}
+		}
+	}
+
+	/**
+	 * Find the shortest route from one room to another.
+	 * Precondition: 0 <= from, to < number of rooms in the world
+	 * Postcondition: Returns the rooms after from along a shortest route, ending with to; an empty array if
+	 *                from == to; null if there is no route for a player holding a key (or not, if hasKey is false)
+	 */
+	public int[] findRoute(int from, int to, boolean hasKey)
+	{
+		if (from == to) {
+			return new int[0];
+		}
+		byte[] steps = nextSteps(to, hasKey);
+		if (steps == null || steps[from] == 0) {
+			return null;
+		}
+		WorldImage image = world.getImage();
+		int length = 0;
+		for (int room = from; room != to; room = step(image, steps, room)) {
+			length++;
+		}
+		int[] route = new int[length];
+		int room = from;
+		for (int i = 0; i < length; i++) {
+			room = step(image, steps, room);
+			route[i] = room;
+		}
+		return route;
+	}
+
+	/**
+	 * Helper method that returns the room reached by taking the exit the table gives for the room.
+	 */
+	private static int step(WorldImage image, byte[] steps, int room)
+	{
+		return image.getExitTarget(image.getExitStart(room) + (steps[room] & 0xFF) - 1);
+	}
+
+	private static Long key(int destination, boolean hasKey)
+	{
+		return 2L * destination + (hasKey ? 1 : 0);
+	}
+
+	/**
+	 * Helper method that returns the table of next steps towards the destination, waiting for it to be computed
+	 * if it is not kept.
+	 * @return By room, which of its exits to take plus one, 0 where there is no route; null if the destination cannot be reached at all.
+	 */
+	private byte[] nextSteps(int destination, boolean hasKey)
+	{
+		Long key = key(destination, hasKey);
+		byte[] steps = pinned.get(key);
+		if (steps != null) {
+			return steps;
+		}
+		CompletableFuture<byte[]> computing;
+		synchronized (nextSteps) {
+			computing = nextSteps.get(key);
+			if (computing == null) {
+				computing = CompletableFuture.supplyAsync(() -> computeNextSteps(destination, hasKey));
+				nextSteps.put(key, computing);
+			}
+		}
+		return computing.join();
+	}
+
+	/**
+	 * Helper method that computes the table of next steps towards the destination.
+	 */
+	private byte[] computeNextSteps(int destination, boolean hasKey)
+	{
+		WorldImage image = world.getImage();
+		int lockedRoom = hasKey ? -1 : image.getLockedRoom();
+		int challengeRoom = hasKey ? -1 : image.getChallengeRoom();
+		if (isTeleport(image, destination) || destination == lockedRoom) {
+			return null;
+		}
+
+		// Breadth-first search along the exits backwards; rooms a route may not pass through are given
+		// their next step but not searched from. The destination is never given a step, only searched from
+		byte[] steps = new byte[roomCount];
+		int[] queue = new int[roomCount];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = destination;
+		while (head < tail) {
+			int room = queue[head++];
+			for (int i = incomingStart[room]; i < incomingStart[room + 1]; i++) {
+				int from = incomingFrom[i];
+				if (steps[from] == 0 && incomingSlot[i] != 0 && from != destination) {
+					steps[from] = incomingSlot[i];
+					if (!isTeleport(image, from) && from != lockedRoom && from != challengeRoom) {
+						queue[tail++] = from;
+					}
+				}
+			}
+		}
+		return steps;
+	}
+
+	private static boolean isTeleport(WorldImage image, int room)
+	{
+		return (image.getRoomFlags(room) & WorldImage.TELEPORT) != 0;
+	}
+}
@@ -0,0 +1,213 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * SessionJournal class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * The journal of one journaled game (see SessionStore). The game appends the input of every command
+ * it has carried out and now and then a snapshot of its state. The game's thread only prepares each
+ * record; the records are written by the writer thread of the store, so playing never waits for the disk.
+ *
+ * A record is the length of its text, the text in UTF-8 and a CRC-32 of the text. Once a snapshot is
+ * durable, the journal is replaced by a new segment holding only its header, so it never grows past the
+ * commands of one snapshot interval.
+ *
+ */
+
+public class SessionJournal
+{
+	private SessionStore store;
+	private String sessionId;
+	private Path journalFile;
+	private Path snapshotFile;
+	private FileChannel channel;        // the segment being written
+
+	// Used by the game's thread only
+	private long segment;               // the number of the segment the next record goes to
+	private int commandsSinceSnapshot;
+
+	// Used by the writer thread only
+	private ByteBuffer header;          // of the segment being written; the next one differs only in its number
+	private boolean failed;             // set once a write has failed; nothing more is written
+
+	/**
+	 * Precondition: channel is open for writing at the end of the valid records of journalFile && header is its header,
+	 *                ready to be read
+	 * Postcondition: Journal ready for appending
+	 */
+	SessionJournal(SessionStore store, String sessionId, Path journalFile, Path snapshotFile, FileChannel channel, ByteBuffer header, int commandsSinceSnapshot)
+	{
+		this.store = store;
+		this.sessionId = sessionId;
+		this.journalFile = journalFile;
+		this.snapshotFile = snapshotFile;
+		this.channel = channel;
+		this.header = header;
+		this.commandsSinceSnapshot = commandsSinceSnapshot;
+		segment = header.getLong(SessionStore.SEGMENT_OFFSET);
+	}
+
+	/**
+	 * Precondition: record holds the lines read for one command, each ending with a newline
+	 * Postcondition: record will be written to the journal
+	 */
+	public void append(CharSequence record)
+	{
+		ByteBuffer bytes = encode(record.toString().getBytes(StandardCharsets.UTF_8));
+		commandsSinceSnapshot++;
+		store.submit(() -> write(bytes));
+	}
+
+	/**
+	 * @return true if enough commands have been appended since the last snapshot that another should be taken.
+	 */
+	public boolean isSnapshotDue()
+	{
+		return commandsSinceSnapshot >= SessionStore.SNAPSHOT_INTERVAL;
+	}
+
+	/**
+	 * Precondition: state was returned by Game.saveState just now
+	 * Postcondition: A snapshot file holding state will be written, and then a new segment of the journal started
+	 *                for the records appended after this call; recovery replays only those
+	 */
+	public void snapshot(byte[] state)
+	{
+		commandsSinceSnapshot = 0;
+		long next = ++segment;
+		store.submit(() -> {
+			writeSnapshot(next, state);
+			startSegment(next);
+		});
+	}
+
+	/**
+	 * Precondition: The game has ended
+	 * Postcondition: The journal and snapshot of the session will be deleted; nothing more may be appended
+	 */
+	public void finish()
+	{
+		store.submit(() -> {
+			try {
+				// The journal goes first: a snapshot without one is ignored, but not a journal without its snapshot
+				channel.close();
+				Files.deleteIfExists(journalFile);
+				Files.deleteIfExists(snapshotFile);
+			}
+			catch (IOException exception) {
+				fail(exception);
+			}
+		});
+	}
+
+	/**
+	 * Helper method that frames the given text as a record.
+	 */
+	private static ByteBuffer encode(byte[] text)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(text);
+		ByteBuffer record = ByteBuffer.allocate(8 + text.length);
+		record.putInt(text.length).put(text).putInt((int) crc.getValue());
+		record.flip();
+		return record;
+	}
+
+	/**
+	 * Writer thread: make everything written so far durable. Called once per batch of writes.
+	 */
+	void force()
+	{
+		if (failed || !channel.isOpen()) {
+			return;
+		}
+		try {
+			channel.force(false);
+		}
+		catch (IOException exception) {
+			fail(exception);
+		}
+	}
+
+	/**
+	 * Writer thread: write one record.
+	 */
+	private void write(ByteBuffer record)
+	{
+		if (failed) {
+			return;
+		}
+		try {
+			while (record.hasRemaining()) {
+				channel.write(record);
+			}
+			store.written(this);
+		}
+		catch (IOException exception) {
+			fail(exception);
+		}
+	}
+
+	/**
+	 * Writer thread: replace the snapshot file with the state the given segment starts from. The records written
+	 * so far need not be durable, as the state holds all they did.
+	 */
+	private void writeSnapshot(long segment, byte[] state)
+	{
+		if (failed) {
+			return;
+		}
+		ByteBuffer contents = ByteBuffer.allocate(24 + state.length);
+		contents.putInt(SessionStore.SNAPSHOT_MAGIC).putInt(SessionStore.VERSION).putLong(segment);
+		contents.putInt(state.length).put(state);
+		CRC32 crc = new CRC32();
+		crc.update(contents.array(), 0, contents.position());
+		contents.putInt((int) crc.getValue());
+		contents.flip();
+		Path temporary = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+		try {
+			try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (contents.hasRemaining()) {
+					file.write(contents);
+				}
+				file.force(false);
+			}
+			Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException exception) {
+			fail(exception);
+		}
+	}
+
+	/**
+	 * Writer thread: replace the journal with a new segment, to which the records that follow are written.
+	 */
+	private void startSegment(long segment)
+	{
+		if (failed) {
+			return;
+		}
+		try {
+			header.putLong(SessionStore.SEGMENT_OFFSET, segment);
+			FileChannel next = SessionStore.createJournal(journalFile, header);
+			channel.close();
+			channel = next;
+		}
+		catch (IOException exception) {
+			fail(exception);
+		}
+	}
+
+	private void fail(IOException exception)
+	{
+		failed = true;
+		System.err.println("Journal of session " + sessionId + " failed: " + exception);
+	}
+}
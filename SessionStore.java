@@ -0,0 +1,332 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * SessionStore class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * Keeps the progress of games in a directory so that it survives the program stopping or crashing.
+ * Every session has a journal, "<session>.journal", to which its game appends each command or answer it carries out,
+ * and now and then a snapshot of the game's state, "<session>.snapshot". Every snapshot starts a new segment of the
+ * journal, which replaces the old one, so the journal only holds the commands since the latest snapshot. Opening a
+ * session that was not finished restores that snapshot and replays the commands of the journal.
+ *
+ * All writes are done by one writer thread. Whatever the games have submitted is written in one batch and
+ * then made durable with a single force per journal (group commit), so the games never wait for the disk.
+ * A command is durable shortly after it has been played; if the program crashes first, the game resumes
+ * just before it. Records cut short by a crash are detected by their checksum and discarded.
+ *
+ * The journal starts with a header: JOURNAL_MAGIC, VERSION, the seed of the game's random source, the
+ * number of rooms and items of its world and the number of the segment. Records follow (see SessionJournal).
+ * Segment 0 starts from a new game made with the seed; every later segment starts from the snapshot of the
+ * same number. A snapshot is replaced before its segment is started, so if the program stops in between,
+ * the snapshot is one segment ahead of the journal and none of the journal's commands are replayed.
+ *
+ */
+
+public class SessionStore implements Closeable
+{
+	public static final int SNAPSHOT_INTERVAL = 1000;   // commands between snapshots
+	static final int JOURNAL_MAGIC = 0x4D41444A;        // "MADJ"
+	static final int SNAPSHOT_MAGIC = 0x4D414453;       // "MADS"
+	static final int VERSION = 4;
+	static final int SEGMENT_OFFSET = 24;               // of the segment number in the header
+	private static final int HEADER_BYTES = 32;
+	private static final Runnable STOP = () -> { };     // submitted by close to stop the writer thread
+
+	private Path directory;
+	private LinkedBlockingQueue<Runnable> writes;
+	private Thread writer;
+	private HashSet<SessionJournal> unforced;       // journals written in the current batch; writer thread only
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Store keeping sessions in directory (created if needed) constructed; its writer thread is running
+	 */
+	public SessionStore(Path directory) throws IOException
+	{
+		this.directory = Files.createDirectories(directory);
+		writes = new LinkedBlockingQueue<Runnable>();
+		unforced = new HashSet<SessionJournal>();
+		writer = new Thread(this::writeBatches, "session-store-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Open a journaled game: the unfinished game of the session if there is one, otherwise a new game.
+	 * Precondition: sessionId consists of letters, digits, - and _ && no game of the session is being played
+	 * Postcondition: Returns the game, ready to play, reading from in and writing to out; throws IOException
+	 *                if the session's journal cannot be read or belongs to a different world
+	 */
+	public Game open(String sessionId, World world, InputStream in, Output out) throws IOException
+	{
+		if (!isValidSessionId(sessionId)) {
+			throw new IllegalArgumentException("Invalid session id: " + sessionId);
+		}
+		// The session's last player may have only just left it: what their game submitted is written first
+		awaitWrites();
+		Path journalFile = directory.resolve(sessionId + ".journal");
+		Path snapshotFile = directory.resolve(sessionId + ".snapshot");
+		Game game = new Game(world, in, out);
+		if (Files.exists(journalFile) && recover(game, sessionId, journalFile, snapshotFile, world)) {
+			return game;
+		}
+		game = new Game(world, in, out);
+		long seed = new SplittableRandom().nextLong();
+		game.setRandom(new SplittableRandom(seed));
+		Files.deleteIfExists(snapshotFile);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(JOURNAL_MAGIC).putInt(VERSION).putLong(seed).putInt(world.getRoomCount()).putInt(world.getItemCount()).putLong(0);
+		header.flip();
+		FileChannel channel = createJournal(journalFile, header);
+		game.setJournal(new SessionJournal(this, sessionId, journalFile, snapshotFile, channel, header, 0));
+		return game;
+	}
+
+	/**
+	 * @return Whether the session id may be given to open: letters, digits, - and _ only.
+	 */
+	public static boolean isValidSessionId(String sessionId)
+	{
+		return sessionId.matches("[A-Za-z0-9_-]+");
+	}
+
+	/**
+	 * Helper method that waits until the writer thread has written everything submitted so far.
+	 */
+	private void awaitWrites() throws IOException
+	{
+		CountDownLatch written = new CountDownLatch(1);
+		writes.add(written::countDown);
+		try {
+			written.await();
+		}
+		catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the journals to be written");
+		}
+	}
+
+	/**
+	 * Write a journal holding only the given header, and put it in place of journalFile once it is durable.
+	 * Precondition: header holds HEADER_BYTES bytes, ready to be read
+	 * Postcondition: Returns the journal, open for writing at its end; header is unchanged
+	 */
+	static FileChannel createJournal(Path journalFile, ByteBuffer header) throws IOException
+	{
+		Path temporary = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+		FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer bytes = header.duplicate();
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			channel.force(false);
+			Files.move(temporary, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return channel;
+		}
+		catch (IOException exception) {
+			channel.close();
+			throw exception;
+		}
+	}
+
+	/**
+	 * Write everything submitted so far, then stop the writer thread.
+	 * Precondition: None
+	 * Postcondition: Every record submitted before this call is durable; later records are not written
+	 */
+	public void close() throws IOException
+	{
+		writes.add(STOP);
+		try {
+			writer.join();
+		}
+		catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Hand a write to the writer thread.
+	 */
+	void submit(Runnable write)
+	{
+		writes.add(write);
+	}
+
+	/**
+	 * Writer thread: note that the journal must be forced at the end of the current batch.
+	 */
+	void written(SessionJournal journal)
+	{
+		unforced.add(journal);
+	}
+
+	/**
+	 * Helper method that restores the game of an unfinished session.
+	 * @return false if the journal holds a game that has already ended, which should be replaced by a new one.
+	 */
+	private boolean recover(Game game, String sessionId, Path journalFile, Path snapshotFile, World world) throws IOException
+	{
+		FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = read(channel, 0, HEADER_BYTES);
+			if (header == null || header.getInt() != JOURNAL_MAGIC || header.getInt() != VERSION) {
+				throw new IOException(journalFile + " is not a session journal of version " + VERSION);
+			}
+			header.getLong();   // the seed, which the snapshots replace
+			if (header.getInt() != world.getRoomCount() || header.getInt() != world.getItemCount()) {
+				throw new IOException(journalFile + " belongs to a different world");
+			}
+			long segment = header.getLong();
+			header.rewind();
+
+			ByteBuffer snapshot = readSnapshot(snapshotFile);
+			long snapshotSegment = snapshot == null ? 0 : snapshot.getLong(8);
+			if (snapshotSegment != segment && snapshotSegment != segment + 1) {
+				throw new IOException(journalFile + " has no snapshot to start segment " + segment + " from");
+			}
+			if (snapshot != null) {
+				byte[] state = new byte[snapshot.getInt(16)];
+				snapshot.get(20, state);
+				game.restoreState(state);
+			}
+			else {
+				game.setRandom(new SplittableRandom(header.getLong(8)));
+			}
+			if (snapshotSegment != segment) {
+				// Stopped before the snapshot's segment was started: every command journaled is in the snapshot
+				channel.close();
+				header.putLong(SEGMENT_OFFSET, snapshotSegment);
+				channel = createJournal(journalFile, header);
+				game.setJournal(new SessionJournal(this, sessionId, journalFile, snapshotFile, channel, header, 0));
+				return true;
+			}
+
+			ByteArrayOutputStream commands = new ByteArrayOutputStream();
+			long position = HEADER_BYTES;
+			int commandCount = 0;
+			ByteBuffer record;
+			while ((record = readRecord(channel, position)) != null) {
+				position += record.capacity() + 8;
+				commands.write(record.array(), 0, record.capacity());
+				commandCount++;
+			}
+			if (game.replay(new ByteArrayInputStream(commands.toByteArray()))) {
+				channel.close();
+				return false;
+			}
+			channel.truncate(position);
+			channel.position(position);
+			game.setJournal(new SessionJournal(this, sessionId, journalFile, snapshotFile, channel, header, commandCount));
+			return true;
+		}
+		catch (IOException | RuntimeException exception) {
+			channel.close();
+			throw exception;
+		}
+	}
+
+	/**
+	 * Helper method that reads the snapshot file.
+	 * @return The whole snapshot, or null if there is none or it is damaged.
+	 */
+	private static ByteBuffer readSnapshot(Path snapshotFile) throws IOException
+	{
+		if (!Files.exists(snapshotFile)) {
+			return null;
+		}
+		ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshotFile));
+		if (snapshot.capacity() < 24 || snapshot.getInt(0) != SNAPSHOT_MAGIC || snapshot.getInt(4) != VERSION
+				|| snapshot.getInt(16) != snapshot.capacity() - 24) {
+			return null;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(snapshot.array(), 0, snapshot.capacity() - 4);
+		return (int) crc.getValue() == snapshot.getInt(snapshot.capacity() - 4) ? snapshot : null;
+	}
+
+	/**
+	 * Helper method that reads the text of the record at the given position.
+	 * @return The text, or null at the end of the journal or at a record cut short or damaged by a crash.
+	 */
+	private static ByteBuffer readRecord(FileChannel channel, long position) throws IOException
+	{
+		ByteBuffer length = read(channel, position, 4);
+		if (length == null) {
+			return null;
+		}
+		int textLength = length.getInt();
+		if (textLength < 0 || position + 8 + textLength > channel.size()) {
+			return null;
+		}
+		ByteBuffer text = read(channel, position + 4, textLength);
+		ByteBuffer checksum = read(channel, position + 4 + textLength, 4);
+		CRC32 crc = new CRC32();
+		crc.update(text.array(), 0, textLength);
+		if ((int) crc.getValue() != checksum.getInt()) {
+			return null;
+		}
+		return text;
+	}
+
+	/**
+	 * Helper method that reads count bytes at the given position.
+	 * @return The bytes, ready to be read, or null if the file ends first.
+	 */
+	private static ByteBuffer read(FileChannel channel, long position, int count) throws IOException
+	{
+		ByteBuffer bytes = ByteBuffer.allocate(count);
+		while (bytes.hasRemaining()) {
+			if (channel.read(bytes, position + bytes.position()) < 0) {
+				return null;
+			}
+		}
+		bytes.flip();
+		return bytes;
+	}
+
+	/**
+	 * Writer thread: write whatever has been submitted in batches, forcing each journal once per batch.
+	 */
+	private void writeBatches()
+	{
+		ArrayList<Runnable> batch = new ArrayList<Runnable>();
+		boolean stopped = false;
+		while (!stopped) {
+			try {
+				batch.add(writes.take());
+			}
+			catch (InterruptedException exception) {
+				return;
+			}
+			writes.drainTo(batch);
+			for (Runnable write : batch) {
+				write.run();
+			}
+			for (SessionJournal journal : unforced) {
+				journal.force();
+			}
+			unforced.clear();
+			stopped = batch.contains(STOP);
+			batch.clear();
+		}
+	}
+}
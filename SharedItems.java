@@ -0,0 +1,96 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * SharedItems class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * The items of a World as seen by several players at once, so that an item one player has picked up is
+ * gone from its room for everybody until it is put back. Every item has an owner: the id of the player
+ * holding it, or 0 while it lies in its room. A player takes an item by changing its owner from 0 to
+ * their id with a single compare-and-set, so when two players grab the same item at the same moment
+ * exactly one of them gets it, and no lock is ever taken. Because an item can only be put back into its
+ * own room, whether an item is in a room is simply whether it has no owner; rooms need no locks either.
+ *
+ * Each player's Inventory keeps its own copy of what it holds (see Inventory(World, SharedItems)); the
+ * owners recorded here decide who gets an item.
+ *
+ * Every room also keeps a count of its items that have no owner, changed by whoever wins or gives up an
+ * item, so whether a room has anything left to take is answered without looking at its items.
+ *
+ */
+
+public class SharedItems
+{
+	private WorldImage image;
+	private AtomicIntegerArray owners;  // by item id: the player holding the item, or 0 if it is in its room
+	private AtomicIntegerArray free;    // by room id: how many of the room's items have no owner
+	private AtomicInteger players;      // ids given to players so far
+
+	/**
+	 * Precondition: world != null
+	 * Postcondition: Every item of world is in its room
+	 */
+	public SharedItems(World world)
+	{
+		image = world.getImage();
+		owners = new AtomicIntegerArray(world.getItemCount());
+		free = new AtomicIntegerArray(world.getRoomCount());
+		for (int room = 0; room < world.getRoomCount(); room++) {
+			free.set(room, image.getItemStart(room + 1) - image.getItemStart(room));
+		}
+		players = new AtomicInteger();
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Returns an id, greater than 0, that no other player of these items has
+	 */
+	public int join()
+	{
+		return players.incrementAndGet();
+	}
+
+	/**
+	 * Precondition: 0 <= item < number of items && player was returned by join
+	 * Postcondition: Returns true if player holds the item, having just taken it or holding it already;
+	 *                false if another player holds it
+	 */
+	public boolean claim(int item, int player)
+	{
+		if (owners.compareAndSet(item, 0, player)) {
+			free.decrementAndGet(image.getItemRoom(item));
+			return true;
+		}
+		return owners.get(item) == player;
+	}
+
+	/**
+	 * Precondition: 0 <= item < number of items && player was returned by join
+	 * Postcondition: The item is back in its room if player held it; returns whether player held it
+	 */
+	public boolean release(int item, int player)
+	{
+		if (owners.compareAndSet(item, player, 0)) {
+			free.incrementAndGet(image.getItemRoom(item));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return The id of the player holding the item, or 0 if it is in its room.
+	 */
+	public int getOwner(int item)
+	{
+		return owners.get(item);
+	}
+
+	/**
+	 * Precondition: 0 <= room < number of rooms
+	 * Postcondition: Returns how many of the room's items have no owner
+	 */
+	public int countFree(int room)
+	{
+		return free.get(room);
+	}
+}
@@ -0,0 +1,66 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * StreamSink class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * A StreamSink encodes text and writes it to an OutputStream, such as System.out or a socket.
+ * The text of each call is encoded into a reusable byte buffer and written to the stream with
+ * a single write followed by a flush.
+ *
+ */
+
+public class StreamSink implements OutputSink
+{
+	private OutputStream stream;
+	private CharsetEncoder encoder;
+	private ByteBuffer bytes;
+	private char[] wrappedText;     // the array wrapped by chars
+	private CharBuffer chars;
+
+	/**
+	 * Precondition: stream != null
+	 * Postcondition: Sink writing to stream in the platform's default character set constructed
+	 */
+	public StreamSink(OutputStream stream)
+	{
+		this(stream, Charset.defaultCharset());
+	}
+
+	/**
+	 * Precondition: stream != null && charset != null
+	 * Postcondition: Sink writing to stream in the given character set constructed
+	 */
+	public StreamSink(OutputStream stream, Charset charset)
+	{
+		this.stream = stream;
+		encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		bytes = ByteBuffer.allocate(1024);
+	}
+
+	public void write(char[] text, int length) throws IOException
+	{
+		if (text != wrappedText) {
+			wrappedText = text;
+			chars = CharBuffer.wrap(text);
+		}
+		chars.clear().limit(length);
+		int needed = (int) Math.ceil(length * (double) encoder.maxBytesPerChar());
+		if (needed > bytes.capacity()) {
+			bytes = ByteBuffer.allocate(needed);
+		}
+		bytes.clear();
+		encoder.reset();
+		encoder.encode(chars, bytes, true);
+		encoder.flush(bytes);
+		stream.write(bytes.array(), 0, bytes.position());
+		stream.flush();
+	}
+}
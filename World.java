@@ -0,0 +1,335 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class World - the map of the "Center of Madniverse" application.
+ *
+ * A World holds the rooms, their exits and the items placed in them, together
+ * with the rooms that have a special role in the game (the starting room, the
+ * room with the target, the locked room, the teleports and the challenge room).
+ *
+ * The map itself is a WorldImage, which may be memory-mapped from a compiled
+ * file. Room and Item objects are only created the first time a game needs
+ * them, so loading a world with a million rooms does not create a million
+ * objects.
+ *
+ * A World never changes after it is loaded, so one World can be shared by
+ * every Game played in the program. Anything a player changes, such as which
+ * items have been picked up, is kept by that player's Game (see Inventory).
+ */
+
+public class World
+{
+    private static World standardWorld;     // shared by every game using the standard map
+
+    private WorldImage image;
+    private AtomicReferenceArray<Room> rooms;   // indexed by room id; null until first needed
+    private AtomicReferenceArray<Item> items;   // indexed by item id; null until first needed
+    private AtomicReferenceArray<AliasTable> pools; // picks teleport destinations, by pool; null until first needed
+    private volatile long[][] itemFlagBits;     // by type flag of Item, one bit per item id; null until first needed
+    private RoutingIndex routingIndex;          // null until first needed
+
+    /**
+     * Create a world reading its map from the given image.
+     * Precondition: image != null
+     * Postcondition: World is ready to be played; no rooms have been created yet
+     */
+    public World(WorldImage image)
+    {
+        this.image = image;
+        rooms = new AtomicReferenceArray<Room>(image.getRoomCount());
+        items = new AtomicReferenceArray<Item>(image.getItemCount());
+        pools = new AtomicReferenceArray<AliasTable>(image.getPoolCount());
+    }
+
+    /**
+     * Load a world from a file: a text source (ending in ".world") is compiled
+     * first, anything else is memory-mapped as a compiled image.
+     * Precondition: file is a readable world source or image
+     * Postcondition: Returns the loaded world
+     */
+    public static World load(Path file) throws IOException
+    {
+        if (file.toString().endsWith(".world")) {
+            return new World(WorldCompiler.compile(file));
+        }
+        return new World(WorldImage.map(file));
+    }
+
+    /**
+     * Return the standard map of the game. It is built the first time it is
+     * needed and shared afterwards.
+     * Precondition: None
+     * Postcondition: Returns the same World on every call
+     * @return The standard world.
+     */
+    public static synchronized World getStandardWorld()
+    {
+        if (standardWorld == null) {
+            standardWorld = new World(createStandardWorld());
+        }
+        return standardWorld;
+    }
+
+    /**
+     * Create all the rooms and link their exits together.
+     * Precondition: None
+     * Postcondition: Returns the compiled image of the standard map
+     */
+    private static WorldImage createStandardWorld()
+    {
+        WorldBuilder world = new WorldBuilder();
+        int centerOfMadness, natureSimulationRoom, eatery, entertainmentRoom, medicineRoom, restroom, chemLab, mathGameRoom, particleCollider, teleport;
+
+        // create the rooms
+        centerOfMadness = world.addRoom("in the Center of Madness, the main compartment of your own quantum computer's hostage chamber", true);
+        natureSimulationRoom = world.addRoom("in a nature simulation room that looks like a forest and has organisms", true);
+        eatery = world.addRoom("in an eatery (food you can't eat right now!!!)", true);
+        entertainmentRoom = world.addRoom("in an entertainment room", true);
+        medicineRoom = world.addRoom("in a medicine room", true);
+        restroom = world.addRoom("in a restroom for you to relieve yourself", true);
+        chemLab = world.addRoom("in a chemistry lab with some (perhaps) useful things", false);
+        mathGameRoom = world.addRoom("in a room with a computer posing math challenges (what could possibly be unveiled if you solve the challenges?)", true);
+        particleCollider = world.addRoom("in a particle collider that is (luckily) not running right now", false);
+        teleport = world.addTeleport();
+
+        // initialise room exits and item locations
+        world.setExit(centerOfMadness, "north", mathGameRoom);
+        world.setExit(centerOfMadness, "west", eatery);
+        world.setExit(centerOfMadness, "south",  entertainmentRoom);
+        world.setExit(centerOfMadness, "east",  teleport);
+        world.addItem(centerOfMadness, "bluepill", Item.MEDICINE, "a blue pill");
+        world.addItem(centerOfMadness, "engine", Item.STATIONARY | Item.TARGET, "the cooling engine of the CPU");
+
+        world.setExit(mathGameRoom, "south",  centerOfMadness);
+        world.setExit(mathGameRoom, "west",  medicineRoom);
+        world.setExit(mathGameRoom, "east",  chemLab);
+        world.addItem(mathGameRoom, "key", Item.KEY, "a key you may or may not need");
+
+        world.setExit(eatery, "east",  centerOfMadness);
+        world.setExit(eatery, "west",  natureSimulationRoom);
+        world.setExit(eatery, "north",  medicineRoom);
+        world.addItem(eatery, "pizza", 0, "a pizza");
+        world.addItem(eatery, "salad", 0, "a salad");
+
+        world.setExit(entertainmentRoom, "north",  centerOfMadness);
+        world.setExit(entertainmentRoom, "south",  restroom);
+        world.addItem(entertainmentRoom, "hat", Item.WEARABLE, "a hat");
+
+        world.setExit(chemLab, "west", mathGameRoom);
+        world.setExit(chemLab, "east",  particleCollider);
+        world.setExit(chemLab, "south",  teleport);
+        world.addItem(chemLab, "potassium", Item.THROWABLE, "1 g potassium");
+        world.addItem(chemLab, "sodium", Item.THROWABLE, "1 g sodium");
+        world.addItem(chemLab, "bomb", Item.THROWABLE, "an atomic bomb");
+
+        world.setExit(medicineRoom, "east",  mathGameRoom);
+        world.setExit(medicineRoom, "south",  eatery);
+        world.addItem(medicineRoom, "purplepill", Item.MEDICINE, "a purple pill");
+
+        world.setExit(natureSimulationRoom, "east",  eatery);
+        world.addItem(natureSimulationRoom, "litter", 0, "bird litter");
+
+        world.setExit(restroom, "north",  entertainmentRoom);
+        world.addItem(restroom, "toilet", Item.STATIONARY, "a toilet containing some of your previous material");
+
+        world.setExit(particleCollider, "west",  chemLab);
+
+        world.setStartRoom(centerOfMadness);  // start game in centerOfMadness
+        world.setMainRoom(centerOfMadness); // Contains the target to be blown up
+        world.setLockedRoom(chemLab); // Key needed to unlock enter room
+        world.setChallengeRoom(mathGameRoom);
+        return world.build();
+    }
+
+    /**
+     * @return The compiled map of this world.
+     */
+    public WorldImage getImage()
+    {
+        return image;
+    }
+
+    /**
+     * Return the index used to find shortest routes between rooms. It is built the first time it is needed.
+     * Precondition: None
+     * Postcondition: Returns the same RoutingIndex on every call
+     */
+    public synchronized RoutingIndex getRoutingIndex()
+    {
+        if (routingIndex == null) {
+            routingIndex = new RoutingIndex(this);
+        }
+        return routingIndex;
+    }
+
+    /**
+     * @return The number of rooms in this world; room ids range from 0 to this number - 1.
+     */
+    public int getRoomCount()
+    {
+        return image.getRoomCount();
+    }
+
+    /**
+     * Return the room with the given id, creating it from the image the first
+     * time it is asked for. Every caller gets the same Room object.
+     * Precondition: 0 <= id < getRoomCount()
+     * Postcondition: Returns the room with the given id
+     */
+    public Room getRoom(int id)
+    {
+        Room room = rooms.get(id);
+        if (room != null) {
+            return room;
+        }
+        room = new Room(this, id, image.getRoomDescription(id), (image.getRoomFlags(id) & WorldImage.TELEPORTABLE) != 0);
+        for (int exit = image.getExitStart(id); exit < image.getExitStart(id + 1); exit++) {
+            int direction = image.getExitDirection(exit);
+            if (direction >= 0) {
+                room.setExit(Direction.get(direction), image.getExitTarget(exit));
+            }
+            else {
+                room.setExit(image.getExitName(exit), image.getExitTarget(exit));
+            }
+        }
+        room.setItems(image.getItemStart(id), image.getItemStart(id + 1));
+        rooms.compareAndSet(id, null, room);
+        return rooms.get(id);
+    }
+
+    /**
+     * @return The number of items in this world; item ids range from 0 to this number - 1.
+     */
+    public int getItemCount()
+    {
+        return image.getItemCount();
+    }
+
+    /**
+     * Precondition: 0 <= id < getItemCount()
+     * Postcondition: Returns the item with the given id; every caller gets the same Item object
+     */
+    public Item getItem(int id)
+    {
+        Item item = items.get(id);
+        if (item != null) {
+            return item;
+        }
+        items.compareAndSet(id, null, new Item(id, image.getItemTitle(id), image.getItemType(id), image.getItemDescription(id)));
+        return items.get(id);
+    }
+
+    /**
+     * Return the types of all items as bitsets, one for each type flag of Item (THROWABLE is flag 0, STATIONARY
+     * flag 1 and so on): bit id of bitset f is set if the item with that id has flag f. They are read from the
+     * image's column of item types the first time they are needed and must not be modified.
+     * Precondition: None
+     * Postcondition: Returns the same bitsets on every call, each of (getItemCount() + 63) / 64 words
+     */
+    public long[][] getItemFlagBits()
+    {
+        long[][] bits = itemFlagBits;
+        if (bits == null) {
+            bits = new long[Item.FLAG_COUNT][(image.getItemCount() + 63) / 64];
+            for (int item = 0; item < image.getItemCount(); item++) {
+                int type = image.getItemType(item);
+                for (int flag = 0; flag < Item.FLAG_COUNT; flag++) {
+                    bits[flag][item >> 6] |= (long) ((type >> flag) & 1) << item;
+                }
+            }
+            itemFlagBits = bits;
+        }
+        return bits;
+    }
+
+    /**
+     * Precondition: None
+     * Postcondition: Returns the item with the given title, or null if there is none
+     */
+    public Item getItem(String title)
+    {
+        int id = image.findItem(title);
+        if (id == -1) {
+            return null;
+        }
+        return getItem(id);
+    }
+
+    /**
+     * @return The room in which every game starts.
+     */
+    public Room getStartRoom()
+    {
+        return getRoom(image.getStartRoom());
+    }
+
+    /**
+     * @return The room containing the target to be blown up, or null if there is none.
+     */
+    public Room getMainRoom()
+    {
+        return getRoomOrNull(image.getMainRoom());
+    }
+
+    /**
+     * @return The room that can only be entered with a key, or null if there is none.
+     */
+    public Room getLockedRoom()
+    {
+        return getRoomOrNull(image.getLockedRoom());
+    }
+
+    /**
+     * @return The first of the pseudo-rooms that teleport the player elsewhere, or null if there is none.
+     */
+    public Room getTeleport()
+    {
+        return getRoomOrNull(image.getTeleport());
+    }
+
+    /**
+     * @return The room posing the math challenges, or null if there is none.
+     */
+    public Room getChallengeRoom()
+    {
+        return getRoomOrNull(image.getChallengeRoom());
+    }
+
+    /**
+     * @return Whether the room is a pseudo-room that teleports the player elsewhere.
+     */
+    public boolean isTeleport(Room room)
+    {
+        return (image.getRoomFlags(room.getId()) & WorldImage.TELEPORT) != 0;
+    }
+
+    /**
+     * Pick where a teleport sends the player: one of the destinations of its pool, each with a
+     * probability proportional to its weight. The pool's alias table is built the first time the pool
+     * is used, in time proportional to its size; every later pick takes constant time.
+     * Precondition: isTeleport(teleport) && random != null
+     * Postcondition: Returns a room from the teleport's destinations, chosen with random
+     */
+    public Room getTeleportDestination(Room teleport, SplittableRandom random)
+    {
+        int pool = image.getTeleporterPool(image.findTeleporter(teleport.getId()));
+        AliasTable table = pools.get(pool);
+        if (table == null) {
+            int start = image.getPoolStart(pool);
+            pools.compareAndSet(pool, null, new AliasTable(image.getPoolWeights(pool), 0, image.getPoolStart(pool + 1) - start));
+            table = pools.get(pool);
+        }
+        return getRoom(image.getDestinationRoom(image.getPoolStart(pool) + table.sample(random)));
+    }
+
+    private Room getRoomOrNull(int id)
+    {
+        if (id == -1) {
+            return null;
+        }
+        return getRoom(id);
+    }
+}
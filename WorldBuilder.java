@@ -0,0 +1,501 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * WorldBuilder class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * A WorldBuilder collects the rooms, exits and items of a world and compiles them into a WorldImage.
+ * Rooms are numbered in the order they are added; exits and items may be added in any order and are
+ * grouped by room when the image is compiled. Every distinct piece of text is stored only once.
+ *
+ * A world may have several teleporters. A teleporter sends the player to one of its pool of
+ * destinations, each picked with a probability proportional to its weight. A teleporter given no
+ * destinations of its own uses the shared pool: every room with a teleport weight above 0
+ * (1 for rooms added as teleportable, unless changed with setTeleportWeight).
+ *
+ */
+
+public class WorldBuilder
+{
+	private static final int INITIAL_CAPACITY = 16;
+
+	private HashMap<String, Integer> stringIds;
+	private ArrayList<String> strings;
+
+	private int roomCount;
+	private int[] roomDescriptions;
+	private int[] roomFlags;
+	private int[] roomWeights;      // weight of each room in the shared teleport pool
+
+	private int exitCount;
+	private int[] exitRooms;
+	private int[] exitDirections;
+	private int[] exitTargets;
+
+	private int itemCount;
+	private int[] itemRooms;
+	private int[] itemTitles;
+	private int[] itemTypes;
+	private int[] itemDescriptions;
+
+	private int teleporterCount;
+	private int[] teleporterRooms;
+
+	private int destinationCount;   // destinations of teleporters with a pool of their own
+	private int[] destinationTeleporters;
+	private int[] destinationRooms;
+	private int[] destinationWeights;
+
+	private int startRoom;
+	private int mainRoom;
+	private int lockedRoom;
+	private int challengeRoom;
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Builder for an empty world constructed
+	 */
+	public WorldBuilder()
+	{
+		stringIds = new HashMap<String, Integer>();
+		strings = new ArrayList<String>();
+		roomDescriptions = new int[INITIAL_CAPACITY];
+		roomFlags = new int[INITIAL_CAPACITY];
+		roomWeights = new int[INITIAL_CAPACITY];
+		exitRooms = new int[INITIAL_CAPACITY];
+		exitDirections = new int[INITIAL_CAPACITY];
+		exitTargets = new int[INITIAL_CAPACITY];
+		itemRooms = new int[INITIAL_CAPACITY];
+		itemTitles = new int[INITIAL_CAPACITY];
+		itemTypes = new int[INITIAL_CAPACITY];
+		itemDescriptions = new int[INITIAL_CAPACITY];
+		teleporterRooms = new int[INITIAL_CAPACITY];
+		destinationTeleporters = new int[INITIAL_CAPACITY];
+		destinationRooms = new int[INITIAL_CAPACITY];
+		destinationWeights = new int[INITIAL_CAPACITY];
+		startRoom = -1;
+		mainRoom = -1;
+		lockedRoom = -1;
+		challengeRoom = -1;
+	}
+
+	/**
+	 * Add a room described "description", something like "in a kitchen".
+	 * Precondition: description != null
+	 * Postcondition: Returns the id of the new room; it is in the shared teleport pool with weight 1 only if teleportable is true
+	 */
+	public int addRoom(String description, boolean teleportable)
+	{
+		if (roomCount == roomDescriptions.length) {
+			roomDescriptions = Arrays.copyOf(roomDescriptions, 2 * roomCount);
+			roomFlags = Arrays.copyOf(roomFlags, 2 * roomCount);
+			roomWeights = Arrays.copyOf(roomWeights, 2 * roomCount);
+		}
+		roomDescriptions[roomCount] = stringId(description);
+		roomFlags[roomCount] = 0;
+		roomWeights[roomCount] = teleportable ? 1 : 0;
+		return roomCount++;
+	}
+
+	/**
+	 * Set how likely the teleporters using the shared pool are to send the player to the room, compared
+	 * with the other rooms of the pool; 0 takes the room out of the pool.
+	 * Precondition: room is the id of an added room that is not a teleporter && weight >= 0
+	 * Postcondition: The room has the given weight in the shared teleport pool
+	 */
+	public void setTeleportWeight(int room, int weight)
+	{
+		checkRoom(room);
+		if (weight < 0 || (weight > 0 && (roomFlags[room] & WorldImage.TELEPORT) != 0)) {
+			throw new IllegalArgumentException("Room " + room + " cannot have teleport weight " + weight);
+		}
+		roomWeights[room] = weight;
+	}
+
+	/**
+	 * Add a teleporter pseudo-room; entering it sends the player to a random destination of its pool.
+	 * It uses the shared pool unless it is given destinations of its own with addTeleportDestination.
+	 * Precondition: None
+	 * Postcondition: Returns the id of the teleporter
+	 */
+	public int addTeleport()
+	{
+		int teleport = addRoom("in a teleport", false);
+		roomFlags[teleport] = WorldImage.TELEPORT | teleporterCount << WorldImage.TELEPORTER_SHIFT;
+		if (teleporterCount == teleporterRooms.length) {
+			teleporterRooms = Arrays.copyOf(teleporterRooms, 2 * teleporterCount);
+		}
+		teleporterRooms[teleporterCount++] = teleport;
+		return teleport;
+	}
+
+	/**
+	 * Add a destination to the pool of a teleporter, which then no longer uses the shared pool.
+	 * Precondition: teleport was returned by addTeleport && room is the id of an added room that is not a teleporter && weight > 0
+	 * Postcondition: The teleporter may send the player to room, with a probability proportional to weight
+	 */
+	public void addTeleportDestination(int teleport, int room, int weight)
+	{
+		checkRoom(room);
+		int teleporter = teleporterIndex(teleport);
+		if (teleporter == -1) {
+			throw new IllegalArgumentException("Room " + teleport + " is not a teleporter");
+		}
+		if (weight <= 0 || (roomFlags[room] & WorldImage.TELEPORT) != 0) {
+			throw new IllegalArgumentException("Room " + room + " cannot be a destination with weight " + weight);
+		}
+		if (destinationCount == destinationRooms.length) {
+			destinationTeleporters = Arrays.copyOf(destinationTeleporters, 2 * destinationCount);
+			destinationRooms = Arrays.copyOf(destinationRooms, 2 * destinationCount);
+			destinationWeights = Arrays.copyOf(destinationWeights, 2 * destinationCount);
+		}
+		destinationTeleporters[destinationCount] = teleporter;
+		destinationRooms[destinationCount] = room;
+		destinationWeights[destinationCount] = weight;
+		destinationCount++;
+	}
+
+	/**
+	 * Define an exit from room "from" in direction "direction" to room "to". If the word is
+	 * not one of the Direction values, the exit is a named exit, such as "portal".
+	 * Precondition: from and to are ids of added rooms && direction != null
+	 * Postcondition: Exit is recorded
+	 */
+	public void setExit(int from, String direction, int to)
+	{
+		Direction standard = Direction.fromWord(direction);
+		addExit(from, standard != null ? standard.ordinal() : -1 - stringId(direction), to);
+	}
+
+	/**
+	 * Define an exit from room "from" in the given direction to room "to".
+	 * Precondition: from and to are ids of added rooms && direction != null
+	 * Postcondition: Exit is recorded
+	 */
+	public void setExit(int from, Direction direction, int to)
+	{
+		addExit(from, direction.ordinal(), to);
+	}
+
+	private void addExit(int from, int directionCode, int to)
+	{
+		checkRoom(from);
+		checkRoom(to);
+		if (exitCount == exitRooms.length) {
+			exitRooms = Arrays.copyOf(exitRooms, 2 * exitCount);
+			exitDirections = Arrays.copyOf(exitDirections, 2 * exitCount);
+			exitTargets = Arrays.copyOf(exitTargets, 2 * exitCount);
+		}
+		exitRooms[exitCount] = from;
+		exitDirections[exitCount] = directionCode;
+		exitTargets[exitCount] = to;
+		exitCount++;
+	}
+
+	/**
+	 * Place an item in a room. Items of a room keep the order in which they were added.
+	 * Precondition: room is the id of an added room && title is not used by any other item
+	 * Postcondition: Item is recorded
+	 */
+	public void addItem(int room, String title, int type, String description)
+	{
+		checkRoom(room);
+		if (itemCount == itemRooms.length) {
+			itemRooms = Arrays.copyOf(itemRooms, 2 * itemCount);
+			itemTitles = Arrays.copyOf(itemTitles, 2 * itemCount);
+			itemTypes = Arrays.copyOf(itemTypes, 2 * itemCount);
+			itemDescriptions = Arrays.copyOf(itemDescriptions, 2 * itemCount);
+		}
+		itemRooms[itemCount] = room;
+		itemTitles[itemCount] = stringId(title);
+		itemTypes[itemCount] = type;
+		itemDescriptions[itemCount] = stringId(description);
+		itemCount++;
+	}
+
+	public void setStartRoom(int room)
+	{
+		checkRoom(room);
+		startRoom = room;
+	}
+
+	public void setMainRoom(int room)
+	{
+		checkRoom(room);
+		mainRoom = room;
+	}
+
+	public void setLockedRoom(int room)
+	{
+		checkRoom(room);
+		lockedRoom = room;
+	}
+
+	public void setChallengeRoom(int room)
+	{
+		checkRoom(room);
+		challengeRoom = room;
+	}
+
+	/**
+	 * @return The number of rooms added so far.
+	 */
+	public int getRoomCount()
+	{
+		return roomCount;
+	}
+
+	/**
+	 * Compile everything added so far into an image held in memory.
+	 * Precondition: A start room has been set
+	 * Postcondition: Returns the image; the builder may still be used afterwards
+	 */
+	public WorldImage build()
+	{
+		if (startRoom == -1) {
+			throw new IllegalStateException("The world has no start room");
+		}
+
+		// Group exits and items by room, keeping the order in which they were added
+		int[] exitStarts = countingOffsets(exitRooms, exitCount);
+		int[] exitOrder = countingOrder(exitRooms, exitCount, exitStarts);
+		int[] itemStarts = countingOffsets(itemRooms, itemCount);
+		int[] itemOrder = countingOrder(itemRooms, itemCount, itemStarts);
+
+		// The shared pool comes first, if any teleporter uses it, then the pools of the other teleporters
+		int[] ownDestinations = new int[teleporterCount];
+		for (int i = 0; i < destinationCount; i++) {
+			ownDestinations[destinationTeleporters[i]]++;
+		}
+		int sharedCount = 0;
+		for (int room = 0; room < roomCount; room++) {
+			roomFlags[room] = (roomFlags[room] & ~WorldImage.TELEPORTABLE) | (roomWeights[room] > 0 ? WorldImage.TELEPORTABLE : 0);
+			if (roomWeights[room] > 0) {
+				sharedCount++;
+			}
+		}
+		int[] pools = new int[teleporterCount];
+		boolean shared = false;
+		int poolCount = 0;
+		for (int teleporter = 0; teleporter < teleporterCount; teleporter++) {
+			if (ownDestinations[teleporter] == 0) {
+				shared = true;
+			}
+		}
+		if (shared) {
+			if (sharedCount == 0) {
+				throw new IllegalStateException("The world has a teleport but no room it can teleport to");
+			}
+			poolCount++;
+		}
+		else {
+			sharedCount = 0;
+		}
+		for (int teleporter = 0; teleporter < teleporterCount; teleporter++) {
+			pools[teleporter] = ownDestinations[teleporter] == 0 ? 0 : poolCount++;
+		}
+		int teleportCount = sharedCount + destinationCount;
+		int itemIndexSize = itemCount == 0 ? 0 : Integer.highestOneBit(itemCount) * 4;
+
+		byte[][] encoded = new byte[strings.size()][];
+		int stringBytes = 0;
+		for (int i = 0; i < encoded.length; i++) {
+			encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+			stringBytes += encoded[i].length;
+		}
+
+		long size = 4L * (WorldImage.HEADER_INTS + 2 * roomCount + 2 * (roomCount + 1) + 2 * exitCount
+				+ 4 * itemCount + 2 * teleporterCount + poolCount + 1 + 2 * teleportCount + itemIndexSize
+				+ strings.size() + 1) + stringBytes;
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalStateException("The world is too large for one image");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		buffer.putInt(WorldImage.MAGIC).putInt(WorldImage.VERSION);
+		buffer.putInt(roomCount).putInt(exitCount).putInt(itemCount).putInt(teleportCount);
+		buffer.putInt(itemIndexSize).putInt(strings.size());
+		buffer.putInt(startRoom).putInt(mainRoom).putInt(lockedRoom).putInt(teleporterCount > 0 ? teleporterRooms[0] : -1);
+		buffer.putInt(challengeRoom).putInt(teleporterCount).putInt(poolCount);
+
+		for (int room = 0; room < roomCount; room++) {
+			buffer.putInt(roomDescriptions[room]);
+		}
+		for (int room = 0; room < roomCount; room++) {
+			buffer.putInt(roomFlags[room]);
+		}
+		for (int room = 0; room <= roomCount; room++) {
+			buffer.putInt(exitStarts[room]);
+		}
+		for (int room = 0; room <= roomCount; room++) {
+			buffer.putInt(itemStarts[room]);
+		}
+		for (int exit = 0; exit < exitCount; exit++) {
+			buffer.putInt(exitDirections[exitOrder[exit]]);
+		}
+		for (int exit = 0; exit < exitCount; exit++) {
+			buffer.putInt(exitTargets[exitOrder[exit]]);
+		}
+		for (int item = 0; item < itemCount; item++) {
+			buffer.putInt(itemTitles[itemOrder[item]]);
+		}
+		for (int item = 0; item < itemCount; item++) {
+			buffer.putInt(itemTypes[itemOrder[item]]);
+		}
+		for (int item = 0; item < itemCount; item++) {
+			buffer.putInt(itemDescriptions[itemOrder[item]]);
+		}
+		for (int item = 0; item < itemCount; item++) {
+			buffer.putInt(itemRooms[itemOrder[item]]);
+		}
+		writeTeleports(buffer, pools, poolCount, ownDestinations, sharedCount);
+		for (int slot : buildItemIndex(itemOrder, itemIndexSize)) {
+			buffer.putInt(slot);
+		}
+		int offset = 0;
+		for (byte[] bytes : encoded) {
+			buffer.putInt(offset);
+			offset += bytes.length;
+		}
+		buffer.putInt(offset);
+		for (byte[] bytes : encoded) {
+			buffer.put(bytes);
+		}
+		return new WorldImage(buffer);
+	}
+
+	/**
+	 * Helper method that writes the teleporters, the start of every pool and the destinations of the pools.
+	 */
+	private void writeTeleports(ByteBuffer buffer, int[] pools, int poolCount, int[] ownDestinations, int sharedCount)
+	{
+		for (int teleporter = 0; teleporter < teleporterCount; teleporter++) {
+			buffer.putInt(teleporterRooms[teleporter]);
+		}
+		for (int teleporter = 0; teleporter < teleporterCount; teleporter++) {
+			buffer.putInt(pools[teleporter]);
+		}
+		int[] poolTeleporters = new int[poolCount];     // a teleporter with its own pool, by pool
+		Arrays.fill(poolTeleporters, -1);
+		for (int teleporter = 0; teleporter < teleporterCount; teleporter++) {
+			if (ownDestinations[teleporter] > 0) {
+				poolTeleporters[pools[teleporter]] = teleporter;
+			}
+		}
+		int start = 0;
+		for (int pool = 0; pool < poolCount; pool++) {
+			buffer.putInt(start);
+			start += poolTeleporters[pool] == -1 ? sharedCount : ownDestinations[poolTeleporters[pool]];
+		}
+		buffer.putInt(start);
+
+		// Destinations of the pools in order: the shared pool's rooms, then the other pools' destinations as added
+		int[] order = new int[start];
+		int[] weights = new int[start];
+		int next = 0;
+		if (sharedCount > 0) {
+			for (int room = 0; room < roomCount; room++) {
+				if (roomWeights[room] > 0) {
+					order[next] = room;
+					weights[next++] = roomWeights[room];
+				}
+			}
+		}
+		int[] poolNext = new int[poolCount];
+		for (int pool = 0, position = next; pool < poolCount; pool++) {
+			if (poolTeleporters[pool] != -1) {
+				poolNext[pool] = position;
+				position += ownDestinations[poolTeleporters[pool]];
+			}
+		}
+		for (int i = 0; i < destinationCount; i++) {
+			int position = poolNext[pools[destinationTeleporters[i]]]++;
+			order[position] = destinationRooms[i];
+			weights[position] = destinationWeights[i];
+		}
+		for (int room : order) {
+			buffer.putInt(room);
+		}
+		for (int weight : weights) {
+			buffer.putInt(weight);
+		}
+	}
+
+	/**
+	 * Helper method that builds the open-addressing title index of the items, placed in image order.
+	 */
+	private int[] buildItemIndex(int[] itemOrder, int size)
+	{
+		int[] index = new int[size];
+		int mask = size - 1;
+		for (int item = 0; item < itemCount; item++) {
+			int title = itemTitles[itemOrder[item]];
+			int slot = WorldImage.mix(strings.get(title).hashCode()) & mask;
+			while (index[slot] != 0) {
+				if (itemTitles[itemOrder[index[slot] - 1]] == title) {
+					throw new IllegalStateException("Duplicate item title: " + strings.get(title));
+				}
+				slot = (slot + 1) & mask;
+			}
+			index[slot] = item + 1;
+		}
+		return index;
+	}
+
+	/**
+	 * Helper method that returns, for every room, the position of its first entry when the
+	 * entries are grouped by room, plus the total count as the last element.
+	 */
+	private int[] countingOffsets(int[] rooms, int count)
+	{
+		int[] starts = new int[roomCount + 1];
+		for (int i = 0; i < count; i++) {
+			starts[rooms[i] + 1]++;
+		}
+		for (int room = 0; room < roomCount; room++) {
+			starts[room + 1] += starts[room];
+		}
+		return starts;
+	}
+
+	/**
+	 * Helper method that returns the indexes of the entries grouped by room, keeping the order within a room.
+	 */
+	private int[] countingOrder(int[] rooms, int count, int[] starts)
+	{
+		int[] next = Arrays.copyOf(starts, roomCount);
+		int[] order = new int[count];
+		for (int i = 0; i < count; i++) {
+			order[next[rooms[i]]++] = i;
+		}
+		return order;
+	}
+
+	private int stringId(String text)
+	{
+		Integer id = stringIds.get(text);
+		if (id == null) {
+			id = strings.size();
+			strings.add(text);
+			stringIds.put(text, id);
+		}
+		return id;
+	}
+
+	private int teleporterIndex(int room)
+	{
+		if (room < 0 || room >= roomCount || (roomFlags[room] & WorldImage.TELEPORT) == 0) {
+			return -1;
+		}
+		return roomFlags[room] >>> WorldImage.TELEPORTER_SHIFT;
+	}
+
+	private void checkRoom(int room)
+	{
+		if (room < 0 || room >= roomCount) {
+			throw new IllegalArgumentException("No room with id " + room);
+		}
+	}
+}
@@ -0,0 +1,253 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * WorldCompiler class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * Compiles the text source of a world into a WorldImage. A source file has one statement per line;
+ * blank lines and anything after a # are ignored, and text containing spaces is written in double quotes:
+ *
+ *   room <name> "<description>" [noteleport]
+ *   teleport <name>
+ *   weight <room> <weight>                         how likely teleports without destinations of their own are
+ *                                                  to pick the room (1 for rooms, 0 for noteleport rooms)
+ *   destination <teleport> <room> <weight>         gives the teleport destinations of its own
+ *   exit <room> <direction> <room>
+ *   item <room> <title> <type> "<description>"      type is none or flags joined by |, e.g. STATIONARY|TARGET
+ *   start <room>, target <room>, locked <room>, challenge <room>
+ *
+ * Rooms may be used before the line that declares them.
+ *
+ */
+
+public class WorldCompiler
+{
+	private static final String[] FLAG_NAMES = {
+		"THROWABLE", "STATIONARY", "TARGET", "WEARABLE", "KEY", "MEDICINE"
+	};
+
+	private Path source;
+	private WorldBuilder builder;
+	private HashMap<String, Integer> roomIds;
+
+	private WorldCompiler(Path source)
+	{
+		this.source = source;
+		builder = new WorldBuilder();
+		roomIds = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * Precondition: source is a readable world source file
+	 * Postcondition: Returns the compiled image; throws IllegalArgumentException naming the line of the first error
+	 */
+	public static WorldImage compile(Path source) throws IOException
+	{
+		WorldCompiler compiler = new WorldCompiler(source);
+		compiler.readRooms();
+		compiler.readStatements();
+		return compiler.builder.build();
+	}
+
+	/**
+	 * First pass: declare every room so that statements may refer to rooms declared later.
+	 */
+	private void readRooms() throws IOException
+	{
+		try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				ArrayList<String> words = split(line, lineNumber);
+				if (words.isEmpty()) {
+					continue;
+				}
+				String name = words.size() > 1 ? words.get(1) : null;
+				if (words.get(0).equals("room")) {
+					expect(words, words.size() == 3 || (words.size() == 4 && words.get(3).equals("noteleport")), lineNumber);
+					declare(name, builder.addRoom(words.get(2), words.size() == 3), lineNumber);
+				}
+				else if (words.get(0).equals("teleport")) {
+					expect(words, words.size() == 2, lineNumber);
+					declare(name, builder.addTeleport(), lineNumber);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Second pass: everything but room declarations.
+	 */
+	private void readStatements() throws IOException
+	{
+		try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				ArrayList<String> words = split(line, lineNumber);
+				if (words.isEmpty()) {
+					continue;
+				}
+				String statement = words.get(0);
+				if (statement.equals("room") || statement.equals("teleport")) {
+					continue;
+				}
+				else if (statement.equals("exit")) {
+					expect(words, words.size() == 4, lineNumber);
+					builder.setExit(room(words.get(1), lineNumber), words.get(2), room(words.get(3), lineNumber));
+				}
+				else if (statement.equals("item")) {
+					expect(words, words.size() == 5, lineNumber);
+					builder.addItem(room(words.get(1), lineNumber), words.get(2), type(words.get(3), lineNumber), words.get(4));
+				}
+				else if (statement.equals("weight") || statement.equals("destination")) {
+					readTeleportStatement(words, lineNumber);
+				}
+				else if (statement.equals("start")) {
+					expect(words, words.size() == 2, lineNumber);
+					builder.setStartRoom(room(words.get(1), lineNumber));
+				}
+				else if (statement.equals("target")) {
+					expect(words, words.size() == 2, lineNumber);
+					builder.setMainRoom(room(words.get(1), lineNumber));
+				}
+				else if (statement.equals("locked")) {
+					expect(words, words.size() == 2, lineNumber);
+					builder.setLockedRoom(room(words.get(1), lineNumber));
+				}
+				else if (statement.equals("challenge")) {
+					expect(words, words.size() == 2, lineNumber);
+					builder.setChallengeRoom(room(words.get(1), lineNumber));
+				}
+				else {
+					throw error("unknown statement " + statement, lineNumber);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper method that reads a weight or destination statement, which the builder may reject.
+	 */
+	private void readTeleportStatement(ArrayList<String> words, int lineNumber)
+	{
+		try {
+			if (words.get(0).equals("weight")) {
+				expect(words, words.size() == 3, lineNumber);
+				builder.setTeleportWeight(room(words.get(1), lineNumber), number(words.get(2), lineNumber));
+			}
+			else {
+				expect(words, words.size() == 4, lineNumber);
+				builder.addTeleportDestination(room(words.get(1), lineNumber), room(words.get(2), lineNumber), number(words.get(3), lineNumber));
+			}
+		}
+		catch (IllegalArgumentException exception) {
+			if (exception.getMessage().startsWith(source.toString())) {
+				throw exception;
+			}
+			throw error(exception.getMessage(), lineNumber);
+		}
+	}
+
+	private void declare(String name, int id, int lineNumber)
+	{
+		if (roomIds.put(name, id) != null) {
+			throw error("room " + name + " is declared twice", lineNumber);
+		}
+	}
+
+	private int room(String name, int lineNumber)
+	{
+		Integer id = roomIds.get(name);
+		if (id == null) {
+			throw error("unknown room " + name, lineNumber);
+		}
+		return id;
+	}
+
+	private int number(String word, int lineNumber)
+	{
+		try {
+			return Integer.parseInt(word);
+		}
+		catch (NumberFormatException exception) {
+			throw error("not a number: " + word, lineNumber);
+		}
+	}
+
+	/**
+	 * Helper method that converts "none" or flag names joined by | into the bitwise type of an Item.
+	 */
+	private int type(String flags, int lineNumber)
+	{
+		if (flags.equals("none")) {
+			return 0;
+		}
+		int type = 0;
+		for (String flag : flags.split("\\|")) {
+			int bit = 0;
+			while (bit < FLAG_NAMES.length && !FLAG_NAMES[bit].equals(flag)) {
+				bit++;
+			}
+			if (bit == FLAG_NAMES.length) {
+				throw error("unknown item type " + flag, lineNumber);
+			}
+			type |= 1 << bit;
+		}
+		return type;
+	}
+
+	/**
+	 * Helper method that splits a line into words; text in double quotes is one word.
+	 */
+	private ArrayList<String> split(String line, int lineNumber)
+	{
+		ArrayList<String> words = new ArrayList<String>();
+		int i = 0;
+		while (i < line.length()) {
+			char c = line.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			}
+			else if (c == '#') {
+				break;
+			}
+			else if (c == '"') {
+				int end = line.indexOf('"', i + 1);
+				if (end == -1) {
+					throw error("missing closing quote", lineNumber);
+				}
+				words.add(line.substring(i + 1, end));
+				i = end + 1;
+			}
+			else {
+				int end = i;
+				while (end < line.length() && !Character.isWhitespace(line.charAt(end))) {
+					end++;
+				}
+				words.add(line.substring(i, end));
+				i = end;
+			}
+		}
+		return words;
+	}
+
+	private void expect(ArrayList<String> words, boolean wellFormed, int lineNumber)
+	{
+		if (!wellFormed) {
+			throw error("malformed " + words.get(0) + " statement", lineNumber);
+		}
+	}
+
+	private IllegalArgumentException error(String message, int lineNumber)
+	{
+		return new IllegalArgumentException(source + ":" + lineNumber + ": " + message);
+	}
+}
@@ -0,0 +1,133 @@
+import java.util.SplittableRandom;
+
+/**
+ * WorldGenerator class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * Generates worlds of any size from a seed, for trying out the game on maps far larger than the standard one.
+ * The same seed and room count always give the same world.
+ *
+ * The ordinary rooms are laid out row by row on a grid. Every room is joined to its western neighbor, the
+ * first room of every row to the room north of it, and other rooms to the room north of them by chance, so
+ * every room can be reached from every other. Each room is passed to the WorldBuilder as soon as it is
+ * generated; nothing else is kept per room.
+ *
+ * Every generated world can be won in the same way as the standard one: the key lies in the challenge room,
+ * the potassium lies in the locked room (a dead end off one of the grid rooms), and the engine lies in
+ * another grid room. At least one room has an exit down into the teleport, which only sends the player to grid rooms.
+ *
+ */
+
+public class WorldGenerator
+{
+	public static final int MIN_ROOMS = 4;
+
+	private static final String[] ADJECTIVES = {
+		"humming", "dusty", "flickering", "frozen", "cramped", "vast", "silent", "sweltering"
+	};
+	private static final String[] PLACES = {
+		"server hall", "storage bay", "cable duct", "memory bank", "control room", "corridor", "cooling vault", "workshop"
+	};
+
+	// Chances, in percent, that a grid room gets each of these
+	private static final int NORTH_EXIT_CHANCE = 40;
+	private static final int TELEPORT_EXIT_CHANCE = 2;
+	private static final int ITEM_CHANCE = 30;
+
+	// Title prefixes and types of the filler items; the room id is appended to make each title unique
+	private static final String[] FILLER_TITLES = { "pebble", "console", "helmet", "vial", "scrap" };
+	private static final int[] FILLER_TYPES = { Item.THROWABLE, Item.STATIONARY, Item.WEARABLE, Item.MEDICINE, 0 };
+	private static final String[] FILLER_DESCRIPTIONS = {
+		"a pebble of silicon", "a dead console", "a cooling helmet", "a vial of coolant", "a piece of scrap"
+	};
+
+	private SplittableRandom random;
+
+	/**
+	 * Precondition: None
+	 * Postcondition: Generator whose worlds are determined by seed constructed
+	 */
+	public WorldGenerator(long seed)
+	{
+		random = new SplittableRandom(seed);
+	}
+
+	/**
+	 * Generate a world with the given number of rooms, not counting the teleport.
+	 * Precondition: roomCount >= MIN_ROOMS
+	 * Postcondition: Returns the image of a connected world that can be won
+	 */
+	public WorldImage generate(int roomCount)
+	{
+		if (roomCount < MIN_ROOMS) {
+			throw new IllegalArgumentException("A generated world needs at least " + MIN_ROOMS + " rooms");
+		}
+		WorldBuilder world = new WorldBuilder();
+		int teleport = world.addTeleport();
+		int lockedRoom = world.addRoom("in a sealed reactor chamber", false);
+		int firstGridRoom = world.getRoomCount();
+		int gridRooms = roomCount - 1;
+		int width = Math.max(2, (int) Math.sqrt(gridRooms));
+
+		// Choose the special rooms up front, so each grid room can be finished as soon as it is added
+		int startRoom = randomGridRoom(firstGridRoom, gridRooms);
+		int challengeRoom = otherGridRoom(firstGridRoom, gridRooms, startRoom);
+		int mainRoom = otherGridRoom(firstGridRoom, gridRooms, challengeRoom);
+		int lockedEntrance = randomGridRoom(firstGridRoom, gridRooms);
+		int teleporter = randomGridRoom(firstGridRoom, gridRooms);
+
+		for (int i = 0; i < gridRooms; i++) {
+			String description = "in a " + ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " " + PLACES[random.nextInt(PLACES.length)];
+			int room = world.addRoom(description, true);
+			int column = i % width;
+			if (column > 0) {
+				world.setExit(room, Direction.WEST, room - 1);
+				world.setExit(room - 1, Direction.EAST, room);
+			}
+			if (i >= width && (column == 0 || random.nextInt(100) < NORTH_EXIT_CHANCE)) {
+				world.setExit(room, Direction.NORTH, room - width);
+				world.setExit(room - width, Direction.SOUTH, room);
+			}
+			if (room == lockedEntrance) {
+				world.setExit(room, Direction.UP, lockedRoom);
+				world.setExit(lockedRoom, Direction.DOWN, room);
+			}
+			if (room == teleporter || random.nextInt(100) < TELEPORT_EXIT_CHANCE) {
+				world.setExit(room, Direction.DOWN, teleport);
+			}
+			if (random.nextInt(100) < ITEM_CHANCE) {
+				int filler = random.nextInt(FILLER_TITLES.length);
+				world.addItem(room, FILLER_TITLES[filler] + room, FILLER_TYPES[filler], FILLER_DESCRIPTIONS[filler]);
+			}
+		}
+
+		// The items of the standard map that decide the game
+		world.addItem(challengeRoom, "key", Item.KEY, "a key you may or may not need");
+		world.addItem(lockedRoom, "potassium", Item.THROWABLE, "1 g potassium");
+		world.addItem(mainRoom, "engine", Item.STATIONARY | Item.TARGET, "the cooling engine of the CPU");
+		world.addItem(randomGridRoom(firstGridRoom, gridRooms), "sodium", Item.THROWABLE, "1 g sodium");
+		world.addItem(randomGridRoom(firstGridRoom, gridRooms), "bomb", Item.THROWABLE, "an atomic bomb");
+		world.addItem(randomGridRoom(firstGridRoom, gridRooms), "bluepill", Item.MEDICINE, "a blue pill");
+		world.addItem(randomGridRoom(firstGridRoom, gridRooms), "purplepill", Item.MEDICINE, "a purple pill");
+		world.addItem(randomGridRoom(firstGridRoom, gridRooms), "hat", Item.WEARABLE, "a hat");
+
+		world.setStartRoom(startRoom);
+		world.setMainRoom(mainRoom);
+		world.setLockedRoom(lockedRoom);
+		world.setChallengeRoom(challengeRoom);
+		return world.build();
+	}
+
+	private int randomGridRoom(int firstGridRoom, int gridRooms)
+	{
+		return firstGridRoom + random.nextInt(gridRooms);
+	}
+
+	/**
+	 * Helper method that returns a random grid room other than the given one.
+	 */
+	private int otherGridRoom(int firstGridRoom, int gridRooms, int room)
+	{
+		int offset = 1 + random.nextInt(gridRooms - 1);
+		return firstGridRoom + (room - firstGridRoom + offset) % gridRooms;
+	}
+}
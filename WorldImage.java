@@ -0,0 +1,443 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * WorldImage class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * A WorldImage is the compiled binary form of a world (see WorldBuilder and WorldCompiler).
+ * All rooms, exits and items are stored in flat tables of ints addressed by id, and all text
+ * is stored once in a string table, so an image can be memory-mapped from a file and read
+ * in place without creating an object for every room.
+ *
+ * Layout (big-endian ints unless noted):
+ *   header        MAGIC, VERSION, then the counts and special room ids below
+ *   rooms         description string id, flags           (one column each, roomCount entries)
+ *                 (the flags of a teleporter also hold its index in the teleporters, from bit TELEPORTER_SHIFT up)
+ *                 first exit, first item                   (roomCount + 1 entries)
+ *   exits         direction code, target room id          (exitCount entries each)
+ *                 (a direction code is the ordinal of a Direction, or -1 - string id for a named exit)
+ *   items         title string id, type, description string id, room id (itemCount entries each)
+ *   teleporters   room id, pool                           (teleporterCount entries each)
+ *   pools         first destination                       (poolCount + 1 entries)
+ *   destinations  room id, weight                         (teleportCount entries each, grouped by pool)
+ *   item index    open-addressing hash table of item id + 1 by title (itemIndexSize entries, 0 = empty)
+ *   strings       start offset of every string            (stringCount + 1 entries)
+ *                 UTF-8 bytes of all strings
+ */
+
+public class WorldImage
+{
+	public static final int MAGIC = 0x4D41444E;    // "MADN"
+	public static final int VERSION = 4;
+	public static final int HEADER_INTS = 15;
+
+	// Room flags
+	public static final int TELEPORTABLE = 1;  // a destination of the teleporters that have no pool of their own
+	public static final int TELEPORT = 2;      // a teleporter pseudo-room
+	public static final int TELEPORTER_SHIFT = 2;  // the flags of a teleporter hold its index from this bit up
+
+	private ByteBuffer buffer;
+	private int roomCount;
+	private int exitCount;
+	private int itemCount;
+	private int teleportCount;
+	private int teleporterCount;
+	private int poolCount;
+	private int itemIndexSize;
+	private int stringCount;
+	private int startRoom;
+	private int mainRoom;
+	private int lockedRoom;
+	private int teleport;
+	private int challengeRoom;
+
+	// Byte offsets of the tables
+	private int roomDescriptions;
+	private int roomFlags;
+	private int roomExitStarts;
+	private int roomItemStarts;
+	private int exitDirections;
+	private int exitTargets;
+	private int itemTitles;
+	private int itemTypes;
+	private int itemDescriptions;
+	private int itemRooms;
+	private int teleporterRooms;
+	private int teleporterPools;
+	private int poolStarts;
+	private int destinationRooms;
+	private int destinationWeights;
+	private int itemIndex;
+	private int stringOffsets;
+	private int stringData;
+
+	/**
+	 * Precondition: buffer holds a complete image starting at index 0
+	 * Postcondition: Image is ready to be read; the buffer is never modified
+	 */
+	public WorldImage(ByteBuffer buffer)
+	{
+		this.buffer = buffer;
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IllegalArgumentException("Not a world image of version " + VERSION);
+		}
+		roomCount = buffer.getInt(8);
+		exitCount = buffer.getInt(12);
+		itemCount = buffer.getInt(16);
+		teleportCount = buffer.getInt(20);
+		itemIndexSize = buffer.getInt(24);
+		stringCount = buffer.getInt(28);
+		startRoom = buffer.getInt(32);
+		mainRoom = buffer.getInt(36);
+		lockedRoom = buffer.getInt(40);
+		teleport = buffer.getInt(44);
+		challengeRoom = buffer.getInt(48);
+		teleporterCount = buffer.getInt(52);
+		poolCount = buffer.getInt(56);
+
+		int offset = HEADER_INTS * 4;
+		roomDescriptions = offset;
+		roomFlags = roomDescriptions + 4 * roomCount;
+		roomExitStarts = roomFlags + 4 * roomCount;
+		roomItemStarts = roomExitStarts + 4 * (roomCount + 1);
+		exitDirections = roomItemStarts + 4 * (roomCount + 1);
+		exitTargets = exitDirections + 4 * exitCount;
+		itemTitles = exitTargets + 4 * exitCount;
+		itemTypes = itemTitles + 4 * itemCount;
+		itemDescriptions = itemTypes + 4 * itemCount;
+		itemRooms = itemDescriptions + 4 * itemCount;
+		teleporterRooms = itemRooms + 4 * itemCount;
+		teleporterPools = teleporterRooms + 4 * teleporterCount;
+		poolStarts = teleporterPools + 4 * teleporterCount;
+		destinationRooms = poolStarts + 4 * (poolCount + 1);
+		destinationWeights = destinationRooms + 4 * teleportCount;
+		itemIndex = destinationWeights + 4 * teleportCount;
+		stringOffsets = itemIndex + 4 * itemIndexSize;
+		stringData = stringOffsets + 4 * (stringCount + 1);
+	}
+
+	/**
+	 * Memory-map a compiled image file read-only.
+	 * Precondition: file was written by write
+	 * Postcondition: Returns the image; its contents are paged in by the operating system as they are read
+	 */
+	public static WorldImage map(Path file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new WorldImage(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Precondition: None
+	 * Postcondition: The complete image is written to file, replacing any previous contents
+	 */
+	public void write(Path file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer contents = buffer.duplicate();
+			contents.clear();
+			while (contents.hasRemaining()) {
+				channel.write(contents);
+			}
+		}
+	}
+
+	public int getRoomCount()
+	{
+		return roomCount;
+	}
+
+	public int getExitCount()
+	{
+		return exitCount;
+	}
+
+	public int getItemCount()
+	{
+		return itemCount;
+	}
+
+	/**
+	 * @return The number of teleport destinations of all pools together.
+	 */
+	public int getTeleportCount()
+	{
+		return teleportCount;
+	}
+
+	public int getTeleporterCount()
+	{
+		return teleporterCount;
+	}
+
+	public int getPoolCount()
+	{
+		return poolCount;
+	}
+
+	/**
+	 * @return The id of the room in which every game starts.
+	 */
+	public int getStartRoom()
+	{
+		return startRoom;
+	}
+
+	/**
+	 * @return The id of the room containing the target, or -1 if there is none.
+	 */
+	public int getMainRoom()
+	{
+		return mainRoom;
+	}
+
+	/**
+	 * @return The id of the room that needs a key, or -1 if there is none.
+	 */
+	public int getLockedRoom()
+	{
+		return lockedRoom;
+	}
+
+	/**
+	 * @return The id of the first teleporter pseudo-room, or -1 if there is none.
+	 */
+	public int getTeleport()
+	{
+		return teleport;
+	}
+
+	/**
+	 * @return The id of the challenge room, or -1 if there is none.
+	 */
+	public int getChallengeRoom()
+	{
+		return challengeRoom;
+	}
+
+	public String getRoomDescription(int room)
+	{
+		return getString(intAt(roomDescriptions, room));
+	}
+
+	public int getRoomFlags(int room)
+	{
+		return intAt(roomFlags, room);
+	}
+
+	/**
+	 * @return The index of the first exit of the room; its exits run up to getExitStart(room + 1).
+	 */
+	public int getExitStart(int room)
+	{
+		return intAt(roomExitStarts, room);
+	}
+
+	/**
+	 * @return The ordinal of the Direction of the exit, or a negative number for a named exit (see getExitName).
+	 */
+	public int getExitDirection(int exit)
+	{
+		return intAt(exitDirections, exit);
+	}
+
+	/**
+	 * @return The word for the direction of the exit, whether it is a Direction or a named exit.
+	 */
+	public String getExitName(int exit)
+	{
+		int code = intAt(exitDirections, exit);
+		if (code >= 0) {
+			return Direction.get(code).toString();
+		}
+		return getString(-1 - code);
+	}
+
+	/**
+	 * Precondition: 0 <= room < getRoomCount() && direction != null
+	 * Postcondition: Returns the id of the room reached from room in the given direction, or -1 if there is no such exit
+	 */
+	public int findExit(int room, Direction direction)
+	{
+		for (int exit = getExitStart(room); exit < getExitStart(room + 1); exit++) {
+			if (intAt(exitDirections, exit) == direction.ordinal()) {
+				return intAt(exitTargets, exit);
+			}
+		}
+		return -1;
+	}
+
+	public int getExitTarget(int exit)
+	{
+		return intAt(exitTargets, exit);
+	}
+
+	/**
+	 * @return The id of the first item of the room; its items run up to getItemStart(room + 1).
+	 */
+	public int getItemStart(int room)
+	{
+		return intAt(roomItemStarts, room);
+	}
+
+	public String getItemTitle(int item)
+	{
+		return getString(intAt(itemTitles, item));
+	}
+
+	public int getItemType(int item)
+	{
+		return intAt(itemTypes, item);
+	}
+
+	public String getItemDescription(int item)
+	{
+		return getString(intAt(itemDescriptions, item));
+	}
+
+	/**
+	 * @return The id of the room in which the item is placed.
+	 */
+	public int getItemRoom(int item)
+	{
+		return intAt(itemRooms, item);
+	}
+
+	/**
+	 * @return The room id of the teleporter with the given index, from 0 to getTeleporterCount() - 1.
+	 */
+	public int getTeleporterRoom(int teleporter)
+	{
+		return intAt(teleporterRooms, teleporter);
+	}
+
+	/**
+	 * @return The pool of destinations of the teleporter with the given index.
+	 */
+	public int getTeleporterPool(int teleporter)
+	{
+		return intAt(teleporterPools, teleporter);
+	}
+
+	/**
+	 * Precondition: 0 <= room < getRoomCount()
+	 * Postcondition: Returns the index of the teleporter that is the given room, or -1 if the room is not a teleporter
+	 */
+	public int findTeleporter(int room)
+	{
+		int flags = getRoomFlags(room);
+		return (flags & TELEPORT) == 0 ? -1 : flags >>> TELEPORTER_SHIFT;
+	}
+
+	/**
+	 * @return The index of the first destination of the pool; its destinations run up to getPoolStart(pool + 1).
+	 */
+	public int getPoolStart(int pool)
+	{
+		return intAt(poolStarts, pool);
+	}
+
+	public int getDestinationRoom(int destination)
+	{
+		return intAt(destinationRooms, destination);
+	}
+
+	/**
+	 * @return The weight of the destination: how likely it is to be picked compared with the others of its pool.
+	 */
+	public int getDestinationWeight(int destination)
+	{
+		return intAt(destinationWeights, destination);
+	}
+
+	/**
+	 * Precondition: 0 <= pool < getPoolCount()
+	 * Postcondition: Returns the weights of the destinations of the pool, in order
+	 */
+	public int[] getPoolWeights(int pool)
+	{
+		int start = getPoolStart(pool);
+		int[] weights = new int[getPoolStart(pool + 1) - start];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = getDestinationWeight(start + i);
+		}
+		return weights;
+	}
+
+	/**
+	 * Look up an item by its title in the item index. Titles are compared with the bytes of the
+	 * string table in place, so a lookup creates no objects.
+	 * Precondition: title != null
+	 * Postcondition: Returns the id of the item with the given title, or -1 if there is none
+	 */
+	public int findItem(String title)
+	{
+		if (itemIndexSize == 0) {
+			return -1;
+		}
+		int mask = itemIndexSize - 1;
+		for (int slot = mix(title.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+			int entry = intAt(itemIndex, slot);
+			if (entry == 0) {
+				return -1;
+			}
+			if (titleEquals(entry - 1, title)) {
+				return entry - 1;
+			}
+		}
+	}
+
+	/**
+	 * Helper method that returns whether the title of the item is the given title. ASCII titles are
+	 * compared byte by byte; any other title is decoded and compared as a String.
+	 */
+	private boolean titleEquals(int item, String title)
+	{
+		int id = intAt(itemTitles, item);
+		int start = stringData + intAt(stringOffsets, id);
+		int length = intAt(stringOffsets, id + 1) - intAt(stringOffsets, id);
+		if (length < title.length()) {
+			return false;   // UTF-8 takes at least one byte per char
+		}
+		for (int i = 0; i < title.length(); i++) {
+			char c = title.charAt(i);
+			if (c >= 0x80) {
+				return getString(id).equals(title);
+			}
+			if (buffer.get(start + i) != c) {
+				return false;
+			}
+		}
+		return length == title.length();
+	}
+
+	/**
+	 * Spreads the bits of a String hash code; shared with WorldBuilder so both place titles in the same slots.
+	 */
+	static int mix(int hash)
+	{
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Helper method that decodes the string with the given id from the string table.
+	 */
+	private String getString(int id)
+	{
+		int start = intAt(stringOffsets, id);
+		int end = intAt(stringOffsets, id + 1);
+		byte[] bytes = new byte[end - start];
+		buffer.get(stringData + start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int intAt(int table, int index)
+	{
+		return buffer.getInt(table + 4 * index);
+	}
+}
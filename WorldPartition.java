@@ -0,0 +1,54 @@
+/**
+ * WorldPartition class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * Divides the rooms of a World among several nodes (see ClusterNode), each of which plays the games of the
+ * players standing in its rooms. Every node owns one run of consecutive room ids, all runs of about the
+ * same length. The rooms of a world are numbered as they are defined, so neighbouring rooms usually have
+ * nearby ids and most moves stay on one node.
+ *
+ */
+
+public class WorldPartition
+{
+	private int roomCount;
+	private int nodeCount;
+
+	/**
+	 * Precondition: world != null && nodeCount > 0
+	 * Postcondition: Partition of the rooms of world among nodeCount nodes constructed
+	 */
+	public WorldPartition(World world, int nodeCount)
+	{
+		if (nodeCount <= 0) {
+			throw new IllegalArgumentException("A world needs at least one node, not " + nodeCount);
+		}
+		roomCount = world.getRoomCount();
+		this.nodeCount = nodeCount;
+	}
+
+	/**
+	 * @return The number of nodes the rooms are divided among.
+	 */
+	public int getNodeCount()
+	{
+		return nodeCount;
+	}
+
+	/**
+	 * Precondition: 0 <= room < number of rooms
+	 * Postcondition: Returns the node, from 0 to getNodeCount() - 1, that owns the room
+	 */
+	public int getNode(int room)
+	{
+		return (int) ((long) room * nodeCount / roomCount);
+	}
+
+	/**
+	 * Precondition: 0 <= node < getNodeCount()
+	 * Postcondition: Returns the id of the first room the node owns; the node owns the rooms up to getFirstRoom(node + 1) - 1
+	 */
+	public int getFirstRoom(int node)
+	{
+		return (int) (((long) node * roomCount + nodeCount - 1) / nodeCount);
+	}
+}
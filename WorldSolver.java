@@ -0,0 +1,1037 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * WorldSolver class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * Explores every situation a player can get into in a World, to prove that the world can be won, find the
+ * shortest way to win it and to each way of losing it, and list the items no player can ever reach.
+ *
+ * A situation is the room the player is in, which of the few items that matter they hold, and whether the
+ * math challenges are posed. The items that matter are any key, which opens the locked room and spares the
+ * challenges, and the items the game lets the player throw at the engine or take (see Game.throwItem and
+ * Game.takeItem). Every other item changes nothing, and putting an item back never helps, so neither is
+ * explored. A situation is packed into a long, which is also its bit in the set of situations seen, so the
+ * set takes two longs per room however far the search goes.
+ *
+ * The situations are explored breadth first, one command further at a time; the situations of each step are
+ * split among the threads of the common fork-join pool, which mark new situations in the set with a
+ * compare-and-set. A teleport is explored as one command to every room it may pick, so a route through it
+ * works only if the teleport is kind. The situations are therefore explored without the teleports first, for
+ * the ways that work whatever they do; then, if the world cannot be won that way, taking only the teleports
+ * the player can walk back to from every room they may pick, so that one that went wrong can be tried again
+ * until it is kind; and last taking every teleport, for the shorter ways that need a kind teleport and for the
+ * rooms that can be entered at all. The rooms passed on the way matter only to "back", which returns through
+ * the exit the player came in by without checking the lock. Where an exit leads back, going through it does
+ * as well, so "back" is only explored through one-way exits, and out of the locked room without a key: from
+ * such an exit the player may go on, pick up items and come back the way they went with "back", which is
+ * explored as one step weighing as many commands as it takes. What the player can gain on such a trip, and
+ * how quickly, is worked out once for each room and items held on entering it (see Frame), in increasing
+ * order of the commands taken, as the trip may itself go through one-way exits and back; it is worked out
+ * between steps, for the situations of the next one, so the threads only read it. "goto" and "back n"
+ * are written out one room at a time, and the history is taken to be deep enough.
+ *
+ */
+
+public class WorldSolver
+{
+	// The items that matter besides keys, with what the game lets the player do with each; ACTION_TYPES gives
+	// the characteristic the item must have, and the target room is needed for every throw
+	private static final String[] TITLES = { "potassium", "sodium", "bomb", "bluepill", "purplepill" };
+	private static final String[] ACTIONS = { "throw", "throw", "throw", "take", "take" };
+	private static final int[] ACTION_TYPES = { Item.THROWABLE, Item.THROWABLE, Item.THROWABLE, Item.MEDICINE, Item.MEDICINE };
+	private static final int WINNING_ACTION = 0;
+	private static final String TARGET_TITLE = "engine";
+
+	private static final int KEY_BIT = 1;           // of the mask of items held: holds a key
+	private static final int MASK_BITS = 6;         // a key and one bit per title
+	private static final int STATE_BITS = MASK_BITS + 1;    // the mask and the challenge flag
+	private static final int CHALLENGES = 5;
+	private static final int SPLIT = 512;           // situations expanded by one task without splitting
+
+	private static final int GO = 0;                // kinds of step; the argument of each is given after it
+	private static final int TELEPORTED = 1;        // exit into the teleport
+	private static final int GET = 2;               // item id
+	private static final int ANSWER = 3;            // nothing
+
+	private static final int NO_TELEPORTS = 0;      // which teleports a search takes
+	private static final int RETRIED_TELEPORTS = 1; // those that can be tried again (see findRetries)
+	private static final int ALL_TELEPORTS = 2;
+
+	private WorldImage image;
+	private int roomCount;
+	private int lockedRoom;
+	private int challengeRoom;
+	private int targetRoom;
+	private int[] titleItems;       // by title: the item with the title, or -1 if it cannot be used
+	private int[] gains;            // by room: the mask of the bits of the items that can be picked up there
+	private int teleports;          // which teleports the search takes
+	private boolean[] retries;      // by pool and whether a key is held: a teleport that went wrong can be tried again
+	private AtomicLongArray seen;   // the bit of every situation reached
+	private List<long[]> steps;     // the situations first reached after each number of steps
+	private boolean[] oneWay;       // by exit: no exit leads back
+	private boolean[] hasBack;      // by room: it has a one-way exit, or it is the locked room
+	private Map<Integer, List<Long>> pending;   // by step: situations reached by coming back through a one-way exit
+	private Map<Long, Frame> frames;            // by room and items held on entering it: the trips from there
+	private List<Frame> frameList;              // by frame id
+	private PriorityQueue<Long> trips;          // frame situations not yet settled, by commands taken (see settleFrames)
+	private int[] poolStarts;       // by room: where its pools start in pools (built for the routes)
+	private int[] pools;            // the pools of which each room is a destination with some weight
+	private boolean winnable;
+	private List<List<String>> shortestRoutes;  // by action: the commands leading to it whatever the teleports do
+	private List<List<String>> luckyRoutes;     // by action: shorter commands leading to it if the teleports are kind
+
+	/**
+	 * Precondition: world != null
+	 * Postcondition: Solver of world constructed; nothing has been explored yet
+	 */
+	public WorldSolver(World world)
+	{
+		image = world.getImage();
+		roomCount = image.getRoomCount();
+		lockedRoom = image.getLockedRoom();
+		challengeRoom = image.getChallengeRoom();
+		int target = image.findItem(TARGET_TITLE);
+		targetRoom = target == -1 ? -1 : image.getItemRoom(target);
+
+		titleItems = new int[TITLES.length];
+		gains = new int[roomCount];
+		for (int t = 0; t < TITLES.length; t++) {
+			int item = image.findItem(TITLES[t]);
+			titleItems[t] = item != -1 && (image.getItemType(item) & (Item.STATIONARY | ACTION_TYPES[t])) == ACTION_TYPES[t] ? item : -1;
+			if (titleItems[t] != -1) {
+				gains[image.getItemRoom(item)] |= titleBit(t);
+			}
+		}
+		for (int item = 0; item < image.getItemCount(); item++) {
+			if ((image.getItemType(item) & (Item.STATIONARY | Item.KEY)) == Item.KEY) {
+				gains[image.getItemRoom(item)] |= KEY_BIT;
+			}
+		}
+
+		oneWay = new boolean[image.getExitCount()];
+		hasBack = new boolean[roomCount];
+		for (int room = 0; room < roomCount; room++) {
+			hasBack[room] = room == lockedRoom;
+			for (int exit = image.getExitStart(room); exit < image.getExitStart(room + 1); exit++) {
+				int next = image.getExitTarget(exit);
+				oneWay[exit] = image.findTeleporter(next) == -1 && !leadsTo(next, room);
+				hasBack[room] |= oneWay[exit];
+			}
+		}
+	}
+
+	/**
+	 * Explore every situation the player can reach from the start of the game.
+	 * Precondition: None
+	 * Postcondition: Returns the number of situations reached; the routes and items can then be asked for
+	 */
+	public long solve()
+	{
+		frames = new HashMap<Long, Frame>();
+		frameList = new ArrayList<Frame>();
+		trips = new PriorityQueue<Long>();
+		indexPools();
+		teleports = NO_TELEPORTS;
+		explore();
+		shortestRoutes = findShortestRoutes();
+		winnable = shortestRoutes.get(WINNING_ACTION) != null;
+		List<String> retried = null;
+		if (!winnable) {
+			findRetries();
+			teleports = RETRIED_TELEPORTS;
+			explore();
+			retried = findShortestRoutes().get(WINNING_ACTION);
+			winnable = retried != null;
+		}
+		// Last, so that the situations seen are all those the player can reach
+		teleports = ALL_TELEPORTS;
+		long count = explore();
+		luckyRoutes = findShortestRoutes();
+		if (retried != null) {
+			luckyRoutes.set(WINNING_ACTION, retried);
+		}
+		for (int action = 0; action < TITLES.length; action++) {
+			List<String> route = shortestRoutes.get(action);
+			if (route != null && luckyRoutes.get(action).size() >= route.size()) {
+				luckyRoutes.set(action, null);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return Whether the player can win: whatever the teleports do, or by trying a teleport again until it is kind.
+	 */
+	public boolean isWinnable()
+	{
+		return winnable;
+	}
+
+	/**
+	 * Precondition: solve has been called
+	 * Postcondition: Returns the commands of a shortest way to win whatever the teleports do, the last one winning;
+	 *                null if there is none. Lines in parentheses describe what the player must answer
+	 */
+	public List<String> getWinningCommands()
+	{
+		return shortestRoutes.get(WINNING_ACTION);
+	}
+
+	/**
+	 * Precondition: solve has been called
+	 * Postcondition: Returns the commands of a shortest way to win that works only if the teleports leave the player
+	 *                where the lines in parentheses say, when it is shorter than getWinningCommands or that is null;
+	 *                null otherwise. When getWinningCommands is null, every teleport on the way can be tried again
+	 *                until it is kind if isWinnable, and some teleport on it cannot otherwise
+	 */
+	public List<String> getLuckyWinningCommands()
+	{
+		return luckyRoutes.get(WINNING_ACTION);
+	}
+
+	/**
+	 * Precondition: solve has been called
+	 * Postcondition: Returns, for every way of losing the player can reach, the commands of a shortest way to it,
+	 *                the last one losing the game: one that works whatever the teleports do if there is one
+	 */
+	public List<List<String>> getLosingCommands()
+	{
+		List<List<String>> losing = new ArrayList<List<String>>();
+		for (int action = 0; action < TITLES.length; action++) {
+			List<String> route = shortestRoutes.get(action) != null ? shortestRoutes.get(action) : luckyRoutes.get(action);
+			if (action != WINNING_ACTION && route != null) {
+				losing.add(route);
+			}
+		}
+		return losing;
+	}
+
+	/**
+	 * Helper method that explores every situation the player can reach taking the teleports the search takes.
+	 * @return The number of situations reached.
+	 */
+	private long explore()
+	{
+		// A teleport marks the situation of its pool when it is first taken with some items, so that every later
+		// teleport with the same items, which can only reach the same rooms again, is not explored
+		seen = new AtomicLongArray((roomCount + image.getPoolCount()) << STATE_BITS >> 6);
+		steps = new ArrayList<long[]>();
+		pending = new HashMap<Integer, List<Long>>();
+		long start = state(image.getStartRoom(), 0, false);
+		mark(start);
+		long[] next = { start };
+		long count = 0;
+		for (int step = 0; next.length > 0 || !pending.isEmpty(); step++) {
+			long[] frontier = settle(next, pending.remove(step));
+			steps.add(frontier);
+			count += frontier.length;
+			prepareTrips(frontier);
+			next = new Expansion(frontier, 0, frontier.length, step).invoke();
+		}
+		return count;
+	}
+
+	/**
+	 * Helper method that works out, for every pool and whether a key is held, whether the player can walk from
+	 * every room the teleport may leave them in back to an exit into a teleporter of the pool, picking up a key
+	 * on the way if there is one. "back" is no help: the teleport forgets the rooms passed before it, and the
+	 * rooms passed after it can be walked to anyway.
+	 */
+	private void findRetries()
+	{
+		// The exits into every room that is not a teleporter, by the room they lead to
+		int[] intoStarts = new int[roomCount + 1];
+		for (int exit = 0; exit < image.getExitCount(); exit++) {
+			intoStarts[image.getExitTarget(exit) + 1]++;
+		}
+		for (int room = 0; room < roomCount; room++) {
+			intoStarts[room + 1] += intoStarts[room];
+		}
+		int[] froms = new int[intoStarts[roomCount]];
+		int[] next = Arrays.copyOf(intoStarts, roomCount);
+		for (int room = 0; room < roomCount; room++) {
+			for (int exit = image.getExitStart(room); exit < image.getExitStart(room + 1); exit++) {
+				froms[next[image.getExitTarget(exit)]++] = room;
+			}
+		}
+
+		retries = new boolean[image.getPoolCount() << 1];
+		boolean[] returns = new boolean[roomCount << 1];    // by room and whether a key is held
+		int[] queue = new int[roomCount << 1];
+		for (int pool = 0; pool < image.getPoolCount(); pool++) {
+			Arrays.fill(returns, false);
+			int head = 0;
+			int tail = 0;
+			for (int room = 0; room < roomCount; room++) {
+				for (int exit = image.getExitStart(room); exit < image.getExitStart(room + 1); exit++) {
+					int teleporter = image.findTeleporter(image.getExitTarget(exit));
+					if (teleporter != -1 && image.getTeleporterPool(teleporter) == pool && !returns[room << 1]) {
+						returns[room << 1] = returns[room << 1 | 1] = true;
+						queue[tail++] = room << 1;
+						queue[tail++] = room << 1 | 1;
+					}
+				}
+			}
+			while (head < tail) {
+				int situation = queue[head++];
+				int room = situation >> 1;
+				int key = situation & 1;
+				if (key == 1 && (gains[room] & KEY_BIT) != 0 && !returns[room << 1]) {
+					returns[room << 1] = true;
+					queue[tail++] = room << 1;
+				}
+				if (image.findTeleporter(room) != -1 || room == lockedRoom && key == 0) {
+					continue;
+				}
+				for (int i = intoStarts[room]; i < intoStarts[room + 1]; i++) {
+					if (!returns[froms[i] << 1 | key]) {
+						returns[froms[i] << 1 | key] = true;
+						queue[tail++] = froms[i] << 1 | key;
+					}
+				}
+			}
+			for (int key = 0; key <= 1; key++) {
+				retries[pool << 1 | key] = true;
+				for (int destination = image.getPoolStart(pool); destination < image.getPoolStart(pool + 1); destination++) {
+					if (image.getDestinationWeight(destination) > 0 && !returns[image.getDestinationRoom(destination) << 1 | key]) {
+						retries[pool << 1 | key] = false;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Precondition: solve has been called
+	 * Postcondition: Returns the ids, in increasing order, of the items in rooms the player can never enter
+	 */
+	public int[] getUnreachableItems()
+	{
+		int[] items = new int[image.getItemCount()];
+		int count = 0;
+		for (int item = 0; item < items.length; item++) {
+			if (!isReached(image.getItemRoom(item))) {
+				items[count++] = item;
+			}
+		}
+		return Arrays.copyOf(items, count);
+	}
+
+	/**
+	 * Precondition: solve has been called && 0 <= room < number of rooms
+	 * Postcondition: Returns whether the player can enter the room
+	 */
+	public boolean isReached(int room)
+	{
+		// The situations of a room are exactly the two words from room << STATE_BITS >> 6
+		int word = room << STATE_BITS >> 6;
+		return (seen.get(word) | seen.get(word + 1)) != 0;
+	}
+
+	/**
+	 * Helper method that finds, for every action, the first step of the search at which it can be done and a route to it.
+	 * @return The routes by action; null for an action that cannot be done.
+	 */
+	private List<List<String>> findShortestRoutes()
+	{
+		List<List<String>> routes = new ArrayList<List<String>>();
+		for (int action = 0; action < TITLES.length; action++) {
+			routes.add(null);
+			for (int step = 0; step < steps.size() && routes.get(action) == null; step++) {
+				for (long state : steps.get(step)) {
+					if (canDo(action, state)) {
+						List<String> route = routeTo(step, state);
+						route.add(ACTIONS[action] + " " + TITLES[action]);
+						routes.set(action, route);
+						break;
+					}
+				}
+			}
+		}
+		return routes;
+	}
+
+	/**
+	 * Helper method that returns whether the action can be done in the situation.
+	 */
+	private boolean canDo(int action, long state)
+	{
+		if (titleItems[action] == -1 || challenge(state) || (mask(state) & titleBit(action)) == 0) {
+			return false;
+		}
+		return !ACTIONS[action].equals("throw") || node(state) == targetRoom;
+	}
+
+	/**
+	 * Helper method that returns the commands leading from the start to a situation first reached after the given
+	 * number of steps, by looking among the situations of each earlier step for one leading to the next, or for
+	 * one a trip through a one-way exit and back leads from.
+	 */
+	private List<String> routeTo(int step, long state)
+	{
+		Deque<String> commands = new ArrayDeque<String>();
+		while (step > 0) {
+			String command = null;
+			for (long from : steps.get(step - 1)) {
+				command = findStep(from, state);
+				if (command != null) {
+					commands.addFirst(command);
+					state = from;
+					step--;
+					break;
+				}
+			}
+			if (command == null) {
+				long[] back = findTrip(step, state);
+				List<String> trip = tripCommands(back);
+				for (int i = trip.size() - 1; i >= 0; i--) {
+					commands.addFirst(trip.get(i));
+				}
+				state = back[0];
+				step -= trip.size();
+			}
+		}
+		return new ArrayList<String>(commands);
+	}
+
+	/**
+	 * Helper method that returns the command that takes the player from one situation to another, or null if none does.
+	 */
+	private String findStep(long from, long to)
+	{
+		String[] found = new String[1];
+		expand(from, (next, kind, argument) -> {
+			if (found[0] == null && (next == to || kind == TELEPORTED && teleportsTo(next, to))) {
+				found[0] = describe(kind, argument, node(to));
+			}
+		});
+		return found[0];
+	}
+
+	/**
+	 * Helper method that returns the command of a step into the given room.
+	 */
+	private String describe(int kind, int argument, int room)
+	{
+		if (kind == GO) {
+			return "go " + exitWord(argument);
+		}
+		if (kind == TELEPORTED) {
+			return "go " + exitWord(argument) + " (if the teleport leaves you " + image.getRoomDescription(room) + ")";
+		}
+		if (kind == GET) {
+			return "get " + image.getItemTitle(argument);
+		}
+		return "(answer the " + CHALLENGES + " math challenges)";
+	}
+
+	/**
+	 * Helper method that returns the word of the go command through an exit.
+	 */
+	private String exitWord(int exit)
+	{
+		int direction = image.getExitDirection(exit);
+		return direction >= 0 ? Direction.get(direction).toString() : image.getExitName(exit);
+	}
+
+	/**
+	 * A step of every situation the player may find themselves in next.
+	 */
+	private interface Step
+	{
+		void to(long state, int kind, int argument);
+	}
+
+	/**
+	 * Helper method that passes every situation one command away from the given one to step, but for coming back
+	 * through a one-way exit (see comeBack) and the teleports the search does not take. A teleport is passed as
+	 * the situation of its pool. Mirrors Game.goRoom and Game.getItem.
+	 */
+	private void expand(long state, Step step)
+	{
+		int node = node(state);
+		int mask = mask(state);
+		boolean hasKey = (mask & KEY_BIT) != 0;
+		if (challenge(state)) {
+			step.to(state(node, mask, false), ANSWER, 0);
+			return;
+		}
+		for (int exit = image.getExitStart(node); exit < image.getExitStart(node + 1); exit++) {
+			int room = image.getExitTarget(exit);
+			int teleporter = image.findTeleporter(room);
+			if (teleporter != -1) {
+				// The situation of the pool, which stands for every room it may pick (see Expansion.teleport)
+				int pool = image.getTeleporterPool(teleporter);
+				if (teleports == ALL_TELEPORTS || teleports == RETRIED_TELEPORTS && retries[pool << 1 | mask & KEY_BIT]) {
+					step.to(state(roomCount + pool, mask, false), TELEPORTED, exit);
+				}
+			}
+			else if (room != lockedRoom || hasKey) {
+				step.to(state(room, mask, room == challengeRoom && !hasKey), GO, exit);
+			}
+		}
+		int gain = gains[node] & ~mask;
+		for (int item = image.getItemStart(node); gain != 0 && item < image.getItemStart(node + 1); item++) {
+			int bit = itemBit(item);
+			if ((gain & bit) != 0) {
+				step.to(state(node, mask | bit, false), GET, item);
+				gain &= ~bit;
+			}
+		}
+	}
+
+	/**
+	 * Helper method that returns the bit of the mask that picking up the item sets, or 0 if it matters not.
+	 */
+	private int itemBit(int item)
+	{
+		if ((image.getItemType(item) & (Item.STATIONARY | Item.KEY)) == Item.KEY) {
+			return KEY_BIT;
+		}
+		for (int t = 0; t < TITLES.length; t++) {
+			if (titleItems[t] == item) {
+				return titleBit(t);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Helper method that returns whether the room has an exit to the target.
+	 */
+	private boolean leadsTo(int room, int target)
+	{
+		for (int exit = image.getExitStart(room); exit < image.getExitStart(room + 1); exit++) {
+			if (image.getExitTarget(exit) == target) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Helper method that returns whether the player, holding the items of the mask, can go through the exit out
+	 * of the room and come back only with "back".
+	 */
+	private boolean needsBack(int room, int exit, int mask)
+	{
+		boolean hasKey = (mask & KEY_BIT) != 0;
+		if (!oneWay[exit] && (room != lockedRoom || hasKey)) {
+			return false;
+		}
+		int target = image.getExitTarget(exit);
+		return image.findTeleporter(target) == -1 && (target != lockedRoom || hasKey);
+	}
+
+	/**
+	 * Helper method that works out, before a step is expanded, every trip its situations can make through a
+	 * one-way exit and back, so that the frames are only read while the step is expanded in parallel. The frame
+	 * of a room entered with some items is worked out once, the first time it is needed.
+	 */
+	private void prepareTrips(long[] frontier)
+	{
+		for (long state : frontier) {
+			int node = node(state);
+			if (!challenge(state) && hasBack[node]) {
+				for (int exit = image.getExitStart(node); exit < image.getExitStart(node + 1); exit++) {
+					if (needsBack(node, exit, mask(state))) {
+						enter(image.getExitTarget(exit), mask(state));
+					}
+				}
+			}
+		}
+		settleFrames();
+	}
+
+	/**
+	 * Helper method that passes, to the steps they are reached at, the situations one trip away from the given
+	 * one reached at the given step: through a one-way exit, about that room, and back.
+	 * Precondition: prepareTrips has been called with the situations of the step
+	 */
+	private void comeBack(long state, int step)
+	{
+		int node = node(state);
+		int mask = mask(state);
+		if (challenge(state) || !hasBack[node]) {
+			return;
+		}
+		for (int exit = image.getExitStart(node); exit < image.getExitStart(node + 1); exit++) {
+			if (needsBack(node, exit, mask)) {
+				Frame frame = frames.get((long) image.getExitTarget(exit) << MASK_BITS | mask);
+				for (int slot = 0; slot < frame.count; slot++) {
+					int held = mask(frame.situations[slot]);
+					if (!challenge(frame.situations[slot]) && held != mask) {
+						addPending(step + 2 + frame.commands[slot], state(node, held, node == challengeRoom && (held & KEY_BIT) == 0));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper method that adds a situation to those first reached at a later step, unless reached before then.
+	 */
+	private void addPending(int step, long state)
+	{
+		synchronized (pending) {
+			pending.computeIfAbsent(step, s -> new ArrayList<Long>()).add(state);
+		}
+	}
+
+	/**
+	 * Helper method that returns the situations of a step: those reached from the step before and those of the
+	 * pending ones that have not been reached yet.
+	 */
+	private long[] settle(long[] next, List<Long> back)
+	{
+		if (back == null) {
+			return next;
+		}
+		long[] frontier = Arrays.copyOf(next, next.length + back.size());
+		int count = next.length;
+		for (long state : back) {
+			if (mark(state)) {
+				frontier[count++] = state;
+			}
+		}
+		return Arrays.copyOf(frontier, count);
+	}
+
+	/**
+	 * Helper method that returns the frame of the room entered with the items of the mask, adding it with the
+	 * situation on entering, after no commands, if it is new.
+	 */
+	private Frame enter(int room, int mask)
+	{
+		long key = (long) room << MASK_BITS | mask;
+		Frame frame = frames.get(key);
+		if (frame == null) {
+			frame = new Frame(frameList.size(), room);
+			frames.put(key, frame);
+			frameList.add(frame);
+			relax(frame, situation(mask, room == challengeRoom && (mask & KEY_BIT) == 0), 0, -1);
+		}
+		return frame;
+	}
+
+	/**
+	 * Helper method that settles the situations of the frames in increasing order of the commands taken to them.
+	 * Every trip is made of a step and a shorter trip, or of the trip to a situation, a trip from there through
+	 * an exit and "back", both shorter, so the first time a situation comes off the queue its number of commands
+	 * is the fewest. A situation settled passes the trips through every exit to the frame of that exit, and the
+	 * situations settled in a frame pass the trips back to every situation that came in.
+	 */
+	private void settleFrames()
+	{
+		while (!trips.isEmpty()) {
+			long trip = trips.poll();
+			Frame frame = frameList.get((int) (trip >>> STATE_BITS & (1L << 33) - 1));
+			int slot = (int) trip & (1 << STATE_BITS) - 1;
+			if (frame.settled[slot]) {
+				continue;
+			}
+			frame.settled[slot] = true;
+			int commands = frame.commands[slot];
+			int situation = frame.situations[slot];
+			int mask = mask(situation);
+			boolean hasKey = (mask & KEY_BIT) != 0;
+			if (challenge(situation)) {
+				relax(frame, situation(mask, false), commands + 1, how(ANSWER, slot, 0, 0));
+				continue;
+			}
+			int room = frame.room;
+			int gain = gains[room] & ~mask;
+			for (int item = image.getItemStart(room); gain != 0 && item < image.getItemStart(room + 1); item++) {
+				int bit = itemBit(item);
+				if ((gain & bit) != 0) {
+					relax(frame, situation(mask | bit, false), commands + 1, how(GET, slot, item, 0));
+					gain &= ~bit;
+				}
+			}
+			for (int exit = image.getExitStart(room); exit < image.getExitStart(room + 1); exit++) {
+				int target = image.getExitTarget(exit);
+				if (image.findTeleporter(target) == -1 && (target != lockedRoom || hasKey)) {
+					Frame inner = enter(target, mask);
+					inner.addCaller((long) frame.id << 39 | (long) exit << STATE_BITS | slot);
+					for (int back = 0; back < inner.count; back++) {
+						if (inner.settled[back] && !challenge(inner.situations[back])) {
+							returnTo(frame, slot, exit, inner, back);
+						}
+					}
+				}
+			}
+			for (int i = 0; i < frame.callerCount; i++) {
+				long caller = frame.callers[i];
+				returnTo(frameList.get((int) (caller >>> 39)), (int) caller & (1 << STATE_BITS) - 1, (int) (caller >>> STATE_BITS), frame, slot);
+			}
+		}
+	}
+
+	/**
+	 * Helper method that offers the situation of the outer frame reached by going through the exit from one of
+	 * its situations, to the given situation of the inner frame, and back; situations are given by their slots.
+	 */
+	private void returnTo(Frame outer, int from, int exit, Frame inner, int to)
+	{
+		int held = mask(inner.situations[to]);
+		int back = situation(held, outer.room == challengeRoom && (held & KEY_BIT) == 0);
+		relax(outer, back, outer.commands[from] + 2 + inner.commands[to], how(GO, from, exit, to));
+	}
+
+	/**
+	 * Helper method that queues a situation of a frame if the given number of commands is the fewest found for it.
+	 */
+	private void relax(Frame frame, int situation, int commands, long how)
+	{
+		int slot = frame.find(situation);
+		if (slot == -1) {
+			slot = frame.add(situation);
+		}
+		if (!frame.settled[slot] && (frame.commands[slot] == -1 || commands < frame.commands[slot])) {
+			frame.commands[slot] = commands;
+			frame.how[slot] = how;
+			trips.add((long) commands << 40 | (long) frame.id << STATE_BITS | slot);
+		}
+	}
+
+	/**
+	 * Helper method that packs how a situation of a frame was reached: by a kind of step from the slot of another
+	 * situation of the frame, with its argument; for a trip through an exit (GO), also the slot it came back from.
+	 */
+	private static long how(int kind, int from, int argument, int back)
+	{
+		return kind | from << 2 | (long) argument << 9 | (long) back << 41;
+	}
+
+	/**
+	 * Helper method that finds how a situation first reached after the given number of steps was reached by a
+	 * trip through a one-way exit and back.
+	 * @return The situation the trip left from, the exit and the slot of the situation it came back from.
+	 */
+	private long[] findTrip(int step, long state)
+	{
+		int node = node(state);
+		int mask = mask(state);
+		for (int exit = image.getExitStart(node); exit < image.getExitStart(node + 1); exit++) {
+			// Every mask held on leaving is one of the masks within the mask held on coming back
+			for (int held = mask; held != 0; ) {
+				held = (held - 1) & mask;
+				Frame frame = frames.get((long) image.getExitTarget(exit) << MASK_BITS | held);
+				int back = frame == null ? -1 : frame.find(situation(mask, false));
+				long from = state(node, held, false);
+				if (back != -1 && needsBack(node, exit, held)
+						&& state == state(node, mask, node == challengeRoom && (mask & KEY_BIT) == 0)) {
+					int before = step - 2 - frame.commands[back];
+					if (before >= 0 && contains(steps.get(before), from)) {
+						return new long[] { from, exit, back };
+					}
+				}
+			}
+		}
+		throw new IllegalStateException("No way found to situation " + state);
+	}
+
+	/**
+	 * Helper method that returns the commands of a trip found by findTrip.
+	 */
+	private List<String> tripCommands(long[] trip)
+	{
+		int exit = (int) trip[1];
+		Frame frame = frames.get((long) image.getExitTarget(exit) << MASK_BITS | mask(trip[0]));
+		List<String> commands = new ArrayList<String>();
+		commands.add("go " + exitWord(exit));
+		commands.addAll(frameCommands(frame, (int) trip[2]));
+		commands.add("back");
+		return commands;
+	}
+
+	/**
+	 * Helper method that returns the commands leading from entering the room of a frame to the situation of a slot.
+	 */
+	private List<String> frameCommands(Frame frame, int slot)
+	{
+		Deque<String> commands = new ArrayDeque<String>();
+		while (frame.how[slot] != -1) {
+			long how = frame.how[slot];
+			int kind = (int) how & 3;
+			int from = (int) (how >>> 2) & (1 << STATE_BITS) - 1;
+			int argument = (int) (how >>> 9);
+			if (kind == GO) {
+				Frame inner = frames.get((long) image.getExitTarget(argument) << MASK_BITS | mask(frame.situations[from]));
+				List<String> trip = frameCommands(inner, (int) (how >>> 41));
+				commands.addFirst("back");
+				for (int i = trip.size() - 1; i >= 0; i--) {
+					commands.addFirst(trip.get(i));
+				}
+				commands.addFirst("go " + exitWord(argument));
+			}
+			else {
+				commands.addFirst(describe(kind, argument, frame.room));
+			}
+			slot = from;
+		}
+		return new ArrayList<String>(commands);
+	}
+
+	/**
+	 * Helper method that returns whether the situations hold the given one.
+	 */
+	private static boolean contains(long[] states, long state)
+	{
+		for (long s : states) {
+			if (s == state) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Helper method that lists, by room, the pools of which it is a destination with some weight, so that the
+	 * routes can tell where a teleport may leave the player without going through every destination of a pool.
+	 */
+	private void indexPools()
+	{
+		poolStarts = new int[roomCount + 1];
+		for (int destination = 0; destination < image.getTeleportCount(); destination++) {
+			if (image.getDestinationWeight(destination) > 0) {
+				poolStarts[image.getDestinationRoom(destination) + 1]++;
+			}
+		}
+		for (int room = 0; room < roomCount; room++) {
+			poolStarts[room + 1] += poolStarts[room];
+		}
+		pools = new int[poolStarts[roomCount]];
+		int[] next = Arrays.copyOf(poolStarts, roomCount);
+		for (int pool = 0; pool < image.getPoolCount(); pool++) {
+			for (int destination = image.getPoolStart(pool); destination < image.getPoolStart(pool + 1); destination++) {
+				if (image.getDestinationWeight(destination) > 0) {
+					pools[next[image.getDestinationRoom(destination)]++] = pool;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper method that returns whether the teleport, given as the situation of its pool, may leave the player
+	 * in the given situation.
+	 */
+	private boolean teleportsTo(long pooled, long to)
+	{
+		int room = node(to);
+		int mask = mask(pooled);
+		if (mask(to) != mask || challenge(to) != (room == challengeRoom && (mask & KEY_BIT) == 0)) {
+			return false;
+		}
+		for (int i = poolStarts[room]; i < poolStarts[room + 1]; i++) {
+			if (pools[i] == node(pooled) - roomCount) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Helper method that marks a situation as reached.
+	 * @return true if it had not been reached before.
+	 */
+	private boolean mark(long state)
+	{
+		int word = (int) (state >>> 6);
+		long bit = 1L << state;
+		long old;
+		do {
+			old = seen.get(word);
+			if ((old & bit) != 0) {
+				return false;
+			}
+		} while (!seen.compareAndSet(word, old, old | bit));
+		return true;
+	}
+
+	private static int titleBit(int title)
+	{
+		return 2 << title;
+	}
+
+	private static long state(int node, int mask, boolean challenge)
+	{
+		return (long) node << STATE_BITS | situation(mask, challenge);
+	}
+
+	/**
+	 * @return The situation within a room, as held by a Frame; the low bits of a situation packed by state.
+	 */
+	private static int situation(int mask, boolean challenge)
+	{
+		return mask << 1 | (challenge ? 1 : 0);
+	}
+
+	private static int node(long state)
+	{
+		return (int) (state >>> STATE_BITS);
+	}
+
+	private static int mask(long state)
+	{
+		return (int) (state >>> 1) & ((1 << MASK_BITS) - 1);
+	}
+
+	private static boolean challenge(long state)
+	{
+		return (state & 1) != 0;
+	}
+
+	/**
+	 * Expands a range of the situations of one step, halving it among forked tasks, and returns the situations
+	 * reached for the first time at the next step. Situations reached by a trip back through a one-way exit are
+	 * passed to the later step they are reached at (see comeBack).
+	 */
+	@SuppressWarnings("serial")
+	private class Expansion extends RecursiveTask<long[]>
+	{
+		private long[] frontier;
+		private int from;
+		private int to;
+		private int step;
+		private long[] found;
+		private int count;
+
+		Expansion(long[] frontier, int from, int to, int step)
+		{
+			this.frontier = frontier;
+			this.from = from;
+			this.to = to;
+			this.step = step;
+		}
+
+		protected long[] compute()
+		{
+			if (to - from > SPLIT) {
+				int middle = (from + to) >>> 1;
+				Expansion left = new Expansion(frontier, from, middle, step);
+				left.fork();
+				long[] right = new Expansion(frontier, middle, to, step).compute();
+				long[] joined = left.join();
+				long[] both = Arrays.copyOf(joined, joined.length + right.length);
+				System.arraycopy(right, 0, both, joined.length, right.length);
+				return both;
+			}
+			found = new long[16];
+			for (int i = from; i < to; i++) {
+				expand(frontier[i], (next, kind, argument) -> {
+					if (kind == TELEPORTED) {
+						teleport(next);
+					}
+					else if (mark(next)) {
+						add(next);
+					}
+				});
+				comeBack(frontier[i], step);
+			}
+			return Arrays.copyOf(found, count);
+		}
+
+		/**
+		 * Reach every room the teleport may pick, given as the situation of its pool, unless a teleport with
+		 * the same items has already been taken.
+		 */
+		private void teleport(long pooled)
+		{
+			if (!mark(pooled)) {
+				return;
+			}
+			int pool = node(pooled) - roomCount;
+			int mask = mask(pooled);
+			for (int destination = image.getPoolStart(pool); destination < image.getPoolStart(pool + 1); destination++) {
+				if (image.getDestinationWeight(destination) > 0) {
+					int room = image.getDestinationRoom(destination);
+					long next = state(room, mask, room == challengeRoom && (mask & KEY_BIT) == 0);
+					if (mark(next)) {
+						add(next);
+					}
+				}
+			}
+		}
+
+		private void add(long state)
+		{
+			if (count == found.length) {
+				found = Arrays.copyOf(found, 2 * count);
+			}
+			found[count++] = state;
+		}
+	}
+
+	/**
+	 * The trips a player can make from a room they came into with some items, to leave it again with "back":
+	 * every situation they can be in there before leaving, with the fewest commands taken to it since coming in
+	 * and how it was reached. Other rooms are only passed on trips that come back to this one. Few of the
+	 * situations of a room are reached in most frames, so each is given a slot as it is reached.
+	 */
+	private static class Frame
+	{
+		private int id;
+		private int room;
+		private int count;                          // slots taken
+		private int[] situations = new int[4];      // by slot: the situation
+		private int[] commands = new int[4];        // by slot: the fewest commands taken to it
+		private long[] how = new long[4];           // by slot: how it was reached (see WorldSolver.how), -1 on coming in
+		private boolean[] settled = new boolean[4];
+		private long[] callers = new long[4];       // frame id, exit and slot of every situation that came in here
+		private int callerCount;
+
+		Frame(int id, int room)
+		{
+			this.id = id;
+			this.room = room;
+		}
+
+		/**
+		 * @return The slot of the situation, or -1 if it has not been reached.
+		 */
+		int find(int situation)
+		{
+			for (int slot = 0; slot < count; slot++) {
+				if (situations[slot] == situation) {
+					return slot;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Precondition: find(situation) == -1
+		 * Postcondition: Returns the slot given to the situation, with no commands found yet
+		 */
+		int add(int situation)
+		{
+			if (count == situations.length) {
+				situations = Arrays.copyOf(situations, 2 * count);
+				commands = Arrays.copyOf(commands, 2 * count);
+				how = Arrays.copyOf(how, 2 * count);
+				settled = Arrays.copyOf(settled, 2 * count);
+			}
+			situations[count] = situation;
+			commands[count] = -1;
+			return count++;
+		}
+
+		void addCaller(long caller)
+		{
+			if (callerCount == callers.length) {
+				callers = Arrays.copyOf(callers, 2 * callerCount);
+			}
+			callers[callerCount++] = caller;
+		}
+	}
+}
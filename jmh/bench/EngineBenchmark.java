@@ -0,0 +1,173 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * EngineBenchmark class.
+ * This is part of the "Center of Madniverse" adventure game.
+ * The JMH benchmarks of the hot paths of the game, on the standard world and on a large generated world.
+ * The work itself is in Benchmarks, which lives with the game in the default package; JMH needs its
+ * benchmarks in a named package, from which the default package cannot be named, so each benchmark calls
+ * the method of Benchmarks it measures through a method handle, which costs about as much as a direct call.
+ *
+ * Run with: mvn -Pjmh package exec:exec (see pom.xml)
+ *
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class EngineBenchmark
+{
+	private static final Class<?> FIXTURE = fixtureClass();
+	private static final MethodHandle CREATE = constructor();
+	private static final MethodHandle PARSE_COMMAND = operation("parseCommand");
+	private static final MethodHandle DISPATCH_SEARCH = operation("dispatchSearch");
+	private static final MethodHandle DISPATCH_HELP = operation("dispatchHelp");
+	private static final MethodHandle GET_EXIT_BY_WORD = operation("getExitByWord");
+	private static final MethodHandle GET_EXIT_BY_DIRECTION = operation("getExitByDirection");
+	private static final MethodHandle SEARCH_ROOM = operation("searchRoom");
+	private static final MethodHandle HAS_CHARACTERISTIC = operation("hasCharacteristic");
+	private static final MethodHandle GET_CHARACTERISTIC = operation("getCharacteristic");
+	private static final MethodHandle ITEMS_WITH_CHARACTERISTIC = operation("itemsWithCharacteristic");
+	private static final MethodHandle TELEPORT_DESTINATION = operation("teleportDestination");
+	private static final MethodHandle PLAY_GAME = operation("playGame");
+
+	@Param({ "standard", "generated" })
+	public String world;
+
+	private Object fixture;     // the Benchmarks set up on world
+
+	@Setup
+	public void setUp() throws Throwable
+	{
+		fixture = (Object) CREATE.invokeExact(world);
+	}
+
+	@Benchmark
+	public long parseCommand() throws Throwable
+	{
+		return (long) PARSE_COMMAND.invokeExact(fixture);
+	}
+
+	@Benchmark
+	public long dispatchSearch() throws Throwable
+	{
+		return (long) DISPATCH_SEARCH.invokeExact(fixture);
+	}
+
+	@Benchmark
+	public long dispatchHelp() throws Throwable
+	{
+		return (long) DISPATCH_HELP.invokeExact(fixture);
+	}
+
+	@Benchmark
+	public long getExitByWord() throws Throwable
+	{
+		return (long) GET_EXIT_BY_WORD.invokeExact(fixture);
+	}
+
+	@Benchmark
+	public long getExitByDirection() throws Throwable
+	{
+		return (long) GET_EXIT_BY_DIRECTION.invokeExact(fixture);
+	}
+
+	@Benchmark
+	public long searchRoom() throws Throwable
+	{
+		return (long) SEARCH_ROOM.invokeExact(fixture);
+	}
+
+	@Benchmark
+	public long hasCharacteristic() throws Throwable
+	{
+		return (long) HAS_CHARACTERISTIC.invokeExact(fixture);
+	}
+
+	@Benchmark
+	public long getCharacteristic() throws Throwable
+	{
+		return (long) GET_CHARACTERISTIC.invokeExact(fixture);
+	}
+
+	@Benchmark
+	public long itemsWithCharacteristic() throws Throwable
+	{
+		return (long) ITEMS_WITH_CHARACTERISTIC.invokeExact(fixture);
+	}
+
+	@Benchmark
+	public long teleportDestination() throws Throwable
+	{
+		return (long) TELEPORT_DESTINATION.invokeExact(fixture);
+	}
+
+	@Benchmark
+	public long playGame() throws Throwable
+	{
+		return (long) PLAY_GAME.invokeExact(fixture);
+	}
+
+	/**
+	 * Helper method that finds Benchmarks in the default package.
+	 */
+	private static Class<?> fixtureClass()
+	{
+		try {
+			return Class.forName("Benchmarks");
+		}
+		catch (ClassNotFoundException exception) {
+			throw new ExceptionInInitializerError(exception);
+		}
+	}
+
+	/**
+	 * Helper method that returns the constructor of Benchmarks as a handle taking a String and returning an Object.
+	 */
+	private static MethodHandle constructor()
+	{
+		try {
+			return MethodHandles.publicLookup()
+				.findConstructor(FIXTURE, MethodType.methodType(void.class, String.class))
+				.asType(MethodType.methodType(Object.class, String.class));
+		}
+		catch (ReflectiveOperationException exception) {
+			throw new ExceptionInInitializerError(exception);
+		}
+	}
+
+	/**
+	 * Helper method that returns the named method of Benchmarks as a handle taking an Object and returning a long.
+	 */
+	private static MethodHandle operation(String name)
+	{
+		try {
+			return MethodHandles.publicLookup()
+				.findVirtual(FIXTURE, name, MethodType.methodType(long.class))
+				.asType(MethodType.methodType(long.class, Object.class));
+		}
+		catch (ReflectiveOperationException exception) {
+			throw new ExceptionInInitializerError(exception);
+		}
+	}
+}